@@ -0,0 +1,139 @@
+package main;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Reads/writes AbstractArrays in a compact binary format.
+// No encapsulation since this is a simple static helper.
+//
+// The binary stream format is as follows:
+// | <nElements> (int)
+// | <[types]> (nElements ints, same codes as AbstractArray.ATR_*)
+// | for each entry: ROWMARKER (byte), then each value
+// |   written with the DataOutputStream method of its type
+// | ENDMARKER (byte)
+
+public class BinaryRowCodec {
+
+	//######## Row marker constants ########//
+	public static final byte
+		ENDMARKER = 0, // No more entries
+		ROWMARKER = 1; // An entry follows
+
+	// Writes the header (nElements and types)
+	public static void writeHeader(DataOutputStream out, int[] types) throws IOException {
+		out.writeInt(types.length);
+		for(int t : types) {
+			out.writeInt(t);
+		}
+	}
+
+	// Reads the header and returns the types array
+	// Returns null if the header is invalid
+	public static int[] readHeader(DataInputStream in) throws IOException {
+		return readHeader(in, -1);
+	}
+
+	// Same as readHeader(), but returns null unless the header has
+	// "expectedElements" types (if not -1). Checked before anything
+	// is allocated, so an invalid stream can't ask for a huge array
+	public static int[] readHeader(DataInputStream in, int expectedElements) throws IOException {
+		int nElements = in.readInt();
+
+		if(nElements <= 0) return null;
+		if(-1 != expectedElements && expectedElements != nElements) return null;
+
+		int[] types = new int[nElements];
+		for(int t=0; t<nElements; t++) {
+			types[t] = in.readInt();
+		}
+
+		return types;
+	}
+
+	// Writes a single entry, preceded by ROWMARKER
+	public static void writeRow(DataOutputStream out, AbstractArray arr) throws IOException {
+		out.writeByte(ROWMARKER);
+		writeValues(out, arr);
+	}
+
+	// Writes the values of a single entry, without any marker
+	public static void writeValues(DataOutputStream out, AbstractArray arr) throws IOException {
+		for(int e=0; e<arr.nElements; e++) {
+			writeValue(out, arr.types[e], arr.elements[e]);
+		}
+	}
+
+	// Writes a single value according to its type code
+	public static void writeValue(DataOutputStream out, int type, Object value) throws IOException {
+		switch(type) {
+		case AbstractArray.ATR_INT:
+			out.writeInt((Integer) value);
+			break;
+		case AbstractArray.ATR_STR:
+			out.writeUTF((String) value);
+			break;
+		case AbstractArray.ATR_DBL:
+			out.writeDouble((Double) value);
+			break;
+		case AbstractArray.ATR_FLT:
+			out.writeFloat((Float) value);
+			break;
+		case AbstractArray.ATR_CHR:
+			out.writeChar((Character) value);
+			break;
+		case AbstractArray.ATR_BOL:
+			out.writeBoolean((Boolean) value);
+			break;
+		default:
+			break;
+		}
+	}
+
+	// Writes the final ENDMARKER
+	public static void writeEnd(DataOutputStream out) throws IOException {
+		out.writeByte(ENDMARKER);
+	}
+
+	// Reads the next entry
+	// Returns null once ENDMARKER is reached
+	public static AbstractArray readRow(DataInputStream in, int[] types) throws IOException {
+		if(ROWMARKER != in.readByte()) return null;
+
+		return readValues(in, types);
+	}
+
+	// Reads the values of a single entry, without any marker
+	public static AbstractArray readValues(DataInputStream in, int[] types) throws IOException {
+
+		AbstractArray arr = new AbstractArray(types.length);
+		System.arraycopy(types, 0, arr.types, 0, types.length);
+
+		for(int e=0; e<types.length; e++) {
+			arr.elements[e] = readValue(in, types[e]);
+		}
+
+		return arr;
+	}
+
+	// Reads a single value according to its type code
+	public static Object readValue(DataInputStream in, int type) throws IOException {
+		switch(type) {
+		case AbstractArray.ATR_INT:
+			return in.readInt();
+		case AbstractArray.ATR_STR:
+			return in.readUTF();
+		case AbstractArray.ATR_DBL:
+			return in.readDouble();
+		case AbstractArray.ATR_FLT:
+			return in.readFloat();
+		case AbstractArray.ATR_CHR:
+			return in.readChar();
+		case AbstractArray.ATR_BOL:
+			return in.readBoolean();
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Reads/writes a <data>.txt file stored as compressed blocks.
+// Each block holds up to <blockSize> lines (entries) of the
+// usual text format, compressed on their own so that a single
+// entry can be read by decompressing only its block.
+//
+// The block file format is as follows:
+// | STATSMAGIC (int)
+// | <[blocks]> (compressed bytes, one after another)
+// | <nBlocks> (int)
+// | <[block directory]> (one BlockInfo per block, see below,
+// |   each followed by <hasStats> (boolean) and its BlockStats)
+// | <directoryOffset> (long, always the last 8 bytes)
+//
+// Files starting with MAGIC have no BlockStats in their directory.
+
+public class BlockDataFile {
+
+	// Marks the beginning of a block file ("DBLK")
+	public static final int MAGIC = 0x44424C4B;
+
+	// Same, for files with BlockStats in their directory ("DBK2")
+	public static final int STATSMAGIC = 0x44424B32;
+
+	// Size of MAGIC, and of the final directoryOffset
+	private static final int MAGICSIZE = 4, FOOTERSIZE = 8;
+
+	// Directory entry of a single block
+	public static class BlockInfo {
+		public int
+			firstRow, // Real index of the first entry in the block
+			nRows, // Number of entries in the block
+			storedLength, // Length of the (compressed) block in the file
+			rawLength; // Length of the block once decompressed
+
+		// Position of the block in the file
+		public long offset;
+
+		// Statistics of the block's entries, or null if unknown
+		public BlockStats stats;
+	}
+
+	//###################################################//
+	//##################### READING #####################//
+	//###################################################//
+
+	// Opens the file at "filePath" for readDirectory()/readBlock()
+	// Returns null if the file is missing.
+	// A commit may replace the file between two reads: reading the
+	// directory and then its blocks through the same handle keeps
+	// reading the file the directory belongs to.
+	public static RandomAccessFile openFile(String filePath) throws IOException {
+
+		if(!Files.exists(Path.of(filePath))) return null;
+
+		return new RandomAccessFile(filePath, "r");
+	}
+
+	// Reads the block directory of the file at "filePath"
+	// Returns an empty directory if the file is missing or empty
+	public static ArrayList<BlockInfo> readDirectory(String filePath) throws IOException {
+
+		if(!Files.exists(Path.of(filePath))) return new ArrayList<BlockInfo>();
+
+		try(RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+			return readDirectory(raf);
+		}
+	}
+
+	// Same as readDirectory(), from a file opened by openFile()
+	public static ArrayList<BlockInfo> readDirectory(RandomAccessFile raf) throws IOException {
+
+		ArrayList<BlockInfo> directory = new ArrayList<BlockInfo>();
+
+		if(raf.length() < MAGICSIZE + FOOTERSIZE) return directory;
+
+		raf.seek(0);
+		int magic = raf.readInt();
+		if(MAGIC != magic && STATSMAGIC != magic) {
+			throw new IOException("Not a block data file");
+		}
+
+		// The directory offset is always in the last 8 bytes
+		raf.seek(raf.length() - FOOTERSIZE);
+		raf.seek(raf.readLong());
+
+		int nBlocks = raf.readInt();
+		for(int b=0; b<nBlocks; b++) {
+			BlockInfo info = new BlockInfo();
+			info.firstRow = raf.readInt();
+			info.nRows = raf.readInt();
+			info.offset = raf.readLong();
+			info.storedLength = raf.readInt();
+			info.rawLength = raf.readInt();
+			if(STATSMAGIC == magic && raf.readBoolean()) {
+				info.stats = BlockStats.read(raf);
+			}
+			directory.add(info);
+		}
+
+		return directory;
+	}
+
+	// Finds the block holding the entry at real index "index"
+	// Returns null if no block holds it
+	public static BlockInfo findBlock(ArrayList<BlockInfo> directory, int index) {
+
+		// Binary search, blocks are ordered by firstRow
+		int lo = 0, hi = directory.size() - 1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			BlockInfo info = directory.get(mid);
+
+			if(index < info.firstRow) {
+				hi = mid - 1;
+			} else if(index >= info.firstRow + info.nRows) {
+				lo = mid + 1;
+			} else {
+				return info;
+			}
+		}
+
+		return null;
+	}
+
+	// Reads and decompresses only the lines of block "info"
+	public static ArrayList<String> readBlock(String filePath, BlockInfo info) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+			return readBlock(raf, info);
+		}
+	}
+
+	// Same as readBlock(), from the file (opened by openFile())
+	// whose directory holds "info"
+	public static ArrayList<String> readBlock(RandomAccessFile raf, BlockInfo info) throws IOException {
+		return splitLines(readBlockText(raf, info));
+	}
+
+	// Reads and decompresses every line of the file
+	public static ArrayList<String> readAllLines(String filePath) throws IOException {
+
+		ArrayList<String> lines = new ArrayList<String>();
+
+		if(!Files.exists(Path.of(filePath))) return lines;
+
+		try(RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+			for(BlockInfo info : readDirectory(raf)) {
+				lines.addAll(splitLines(readBlockText(raf, info)));
+			}
+		}
+
+		return lines;
+	}
+
+	// Opens a Reader streaming the decompressed text of every
+	// block, one block at a time
+	public static Reader openReader(String filePath) throws IOException {
+		return new BlockReader(filePath);
+	}
+
+	private static String readBlockText(RandomAccessFile raf, BlockInfo info) throws IOException {
+
+		byte[] stored = new byte[info.storedLength];
+		raf.seek(info.offset);
+		raf.readFully(stored);
+
+		return new String(inflate(stored, info.rawLength), StandardCharsets.UTF_8);
+	}
+
+	private static ArrayList<String> splitLines(String text) {
+
+		ArrayList<String> lines = new ArrayList<String>();
+
+		int start = 0;
+		for(int i=0; i<text.length(); i++) {
+			if('\n' == text.charAt(i)) {
+				lines.add(text.substring(start, i));
+				start = i + 1;
+			}
+		}
+
+		return lines;
+	}
+
+	//###################################################//
+	//##################### WRITING #####################//
+	//###################################################//
+
+	// Writes "lines" to "filePath" as blocks of "blockSize" lines,
+	// replacing any previous content at once
+	// Blocks get statistics of the fields in "layout" (if not null)
+	public static void writeAllLines(String filePath, ArrayList<String> lines, int blockSize,
+			BlockStats.Layout layout) throws IOException {
+
+		String tmpFilePath = SnapshotRegistry.createTempFile(filePath);
+
+		try {
+			try(Appender appender = new Appender(tmpFilePath, blockSize, layout)) {
+				for(String line : lines) {
+					appender.write(line + "\n");
+				}
+			}
+
+			SnapshotRegistry.replaceFile(tmpFilePath, filePath);
+		} catch (IOException e) {
+			Files.deleteIfExists(Path.of(tmpFilePath));
+			throw e;
+		}
+	}
+
+	// Appends lines at the end of a block file.
+	// Whatever is written is split on '\n', and every line
+	// is one entry. The last, incomplete, block of an existing
+	// file is re-opened so that blocks stay full. The directory
+	// is only written on close().
+	public static class Appender extends Writer {
+
+		private RandomAccessFile raf;
+		private ArrayList<BlockInfo> directory;
+		private int blockSize;
+
+		// Computes the BlockStats of each written block, or null
+		private BlockStats.Builder statsBuilder;
+
+		// Lines of the block being filled
+		private StringBuffer blockBuffer = new StringBuffer();
+		private int blockRows = 0;
+
+		// Real index of the next entry
+		private int nextRow = 0;
+
+		public Appender(String filePath, int blockSize) throws IOException {
+			this(filePath, blockSize, null);
+		}
+
+		// Blocks get statistics of the fields in "layout" (if not null)
+		public Appender(String filePath, int blockSize, BlockStats.Layout layout) throws IOException {
+
+			this.blockSize = Math.max(1, blockSize);
+			this.raf = new RandomAccessFile(filePath, "rw");
+			this.directory = readDirectory(raf);
+			if(null != layout) this.statsBuilder = new BlockStats.Builder(layout);
+
+			// New files and old (MAGIC) ones are written with stats
+			raf.setLength(Math.max(raf.length(), MAGICSIZE));
+			raf.seek(0);
+			raf.writeInt(STATSMAGIC);
+
+			if(directory.isEmpty()) {
+				// New file
+				raf.setLength(MAGICSIZE);
+				return;
+			}
+
+			// Re-open the last block if it isn't full
+			BlockInfo last = directory.get(directory.size() - 1);
+			long truncateAt = last.offset + last.storedLength;
+			nextRow = last.firstRow + last.nRows;
+			if(last.nRows < this.blockSize) {
+				blockBuffer.append(readBlockText(raf, last));
+				blockRows = last.nRows;
+				truncateAt = last.offset;
+				nextRow = last.firstRow;
+				directory.remove(directory.size() - 1);
+			}
+
+			// Drop the old directory (and maybe the last block)
+			raf.setLength(truncateAt);
+			raf.seek(truncateAt);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			for(int i=off; i<off+len; i++) {
+				blockBuffer.append(cbuf[i]);
+
+				if('\n' == cbuf[i]) {
+					blockRows++;
+					if(blockRows >= blockSize) writeBlock();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// Blocks are only written once full, or on close()
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if(null == raf) return;
+
+			try {
+				if(blockRows > 0) writeBlock();
+
+				// Write the directory, then its offset
+				long directoryOffset = raf.getFilePointer();
+				raf.writeInt(directory.size());
+				for(BlockInfo info : directory) {
+					raf.writeInt(info.firstRow);
+					raf.writeInt(info.nRows);
+					raf.writeLong(info.offset);
+					raf.writeInt(info.storedLength);
+					raf.writeInt(info.rawLength);
+
+					raf.writeBoolean(null != info.stats);
+					if(null != info.stats) info.stats.write(raf);
+				}
+				raf.writeLong(directoryOffset);
+			} finally {
+				raf.close();
+				raf = null;
+			}
+		}
+
+		private void writeBlock() throws IOException {
+
+			byte[] raw = blockBuffer.toString().getBytes(StandardCharsets.UTF_8);
+			byte[] stored = deflate(raw);
+
+			BlockInfo info = new BlockInfo();
+			info.firstRow = nextRow;
+			info.nRows = blockRows;
+			info.offset = raf.getFilePointer();
+			info.storedLength = stored.length;
+			info.rawLength = raw.length;
+
+			if(null != statsBuilder) {
+				for(String line : splitLines(blockBuffer.toString())) {
+					statsBuilder.addLine(line);
+				}
+				info.stats = statsBuilder.build();
+			}
+
+			raf.write(stored);
+			directory.add(info);
+
+			nextRow += blockRows;
+			blockRows = 0;
+			blockBuffer.delete(0, blockBuffer.length());
+		}
+	}
+
+	// Streams the text of each block, in order
+	private static class BlockReader extends Reader {
+
+		private RandomAccessFile raf;
+		private ArrayList<BlockInfo> directory;
+
+		// Index of the next block to load
+		private int nextBlock = 0;
+
+		// Text of the current block, and the read position in it
+		private String blockText = "";
+		private int position = 0;
+
+		BlockReader(String filePath) throws IOException {
+			this.raf = new RandomAccessFile(filePath, "r");
+			this.directory = readDirectory(raf);
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+
+			// Load the next block once the current one is consumed
+			while(position >= blockText.length()) {
+				if(nextBlock >= directory.size()) return -1;
+
+				blockText = readBlockText(raf, directory.get(nextBlock++));
+				position = 0;
+			}
+
+			int n = Math.min(len, blockText.length() - position);
+			blockText.getChars(position, position + n, cbuf, off);
+			position += n;
+
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			raf.close();
+		}
+	}
+
+	//###################################################//
+	//################### COMPRESSION ###################//
+	//###################################################//
+
+	private static byte[] deflate(byte[] raw) {
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(raw);
+		deflater.finish();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+		byte[] chunk = new byte[4096];
+		while(!deflater.finished()) {
+			int n = deflater.deflate(chunk);
+			out.write(chunk, 0, n);
+		}
+		deflater.end();
+
+		return out.toByteArray();
+	}
+
+	private static byte[] inflate(byte[] stored, int rawLength) throws IOException {
+
+		Inflater inflater = new Inflater();
+		inflater.setInput(stored);
+
+		byte[] raw = new byte[rawLength];
+		try {
+			int n = 0;
+			while(n < rawLength && !inflater.finished()) {
+				int inflated = inflater.inflate(raw, n, rawLength - n);
+
+				// Truncated block, no more input to inflate
+				if(0 == inflated && inflater.needsInput()) {
+					throw new IOException("Truncated block");
+				}
+				n += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted block", e);
+		} finally {
+			inflater.end();
+		}
+
+		return raw;
+	}
+}
@@ -0,0 +1,377 @@
+package main;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Statistics of the entries of a single block of a BlockDataFile,
+// stored in the block directory. They let scans skip the blocks
+// that can't hold a value, without decompressing them:
+// - zone map: min/max of each numeric (ATR_INT/DBL/FLT) field
+// - Bloom filter: the stored values of each key field, ATR_INT
+//   ones in canonical form (see bloomToken())
+//
+// Fields are identified by ID (see DatabaseMetadata.columnIds), so
+// statistics stay valid when the schema changes. A block holding
+// entries of an older schema version gets no statistics at all.
+//
+// The serialized stats format is as follows:
+// | <nColumns> (int)
+// | for each field: <column ID> (int), <flags> (byte, HAS*),
+// |   then <min>, <max> (doubles) if HASZONEMAP,
+// |   then <nWords> (int), <[words]> (longs) if HASBLOOMFILTER
+//
+// Bloom filters written before CANONICALTOKENS hashed ATR_INT
+// values as stored (i.e.: "05"), and are ignored when read.
+
+public class BlockStats {
+
+	//######## Flag constants ########//
+	public static final byte
+		HASZONEMAP = 1,
+		HASBLOOMFILTER = 2,
+		CANONICALTOKENS = 4; // Bloom filter of canonical tokens
+
+	// Bits of Bloom filter per entry, and hashes per value
+	// (about 1% false positives)
+	public static final int BLOOMBITSPERENTRY = 10, BLOOMHASHES = 7;
+
+	// Fields to compute statistics for, when writing blocks
+	public static class Layout {
+		public int schemaVersion;
+
+		// ID and type of each current field, and
+		// whether it gets a Bloom filter
+		public int[] columnIds, types;
+		public boolean[] bloomFilters;
+	}
+
+	// Statistics of a single field
+	public static class ColumnStats {
+		public int columnId;
+
+		// Zone map, only if hasZoneMap
+		public boolean hasZoneMap;
+		public double min, max;
+
+		// Bloom filter bits, or null
+		public long[] bloomFilter;
+	}
+
+	public ArrayList<ColumnStats> columns = new ArrayList<ColumnStats>();
+
+	//###################################################//
+	//##################### LOOKUPS #####################//
+	//###################################################//
+
+	// Returns false if no entry of the block can have a value
+	// within [min, max] in field "columnId"
+	public boolean mayOverlap(int columnId, double min, double max) {
+
+		ColumnStats stats = getColumnStats(columnId);
+		if(null == stats || !stats.hasZoneMap) return true;
+
+		return min <= stats.max && max >= stats.min;
+	}
+
+	// Returns false if no entry of the block can have the stored
+	// value "token" (see bloomToken()) in field "columnId"
+	public boolean mayContain(int columnId, String token) {
+
+		ColumnStats stats = getColumnStats(columnId);
+		if(null == stats || null == stats.bloomFilter) return true;
+
+		long hash = hash(token);
+		int nBits = stats.bloomFilter.length * 64;
+
+		for(int h=0; h<BLOOMHASHES; h++) {
+			int bit = bloomBit(hash, h, nBits);
+			if(0 == (stats.bloomFilter[bit >>> 6] & (1L << bit))) return false;
+		}
+
+		return true;
+	}
+
+	private ColumnStats getColumnStats(int columnId) {
+		for(ColumnStats stats : columns) {
+			if(columnId == stats.columnId) return stats;
+		}
+		return null;
+	}
+
+	//###################################################//
+	//##################### BUILDING ####################//
+	//###################################################//
+
+	// Collects the statistics of a block while its lines are written
+	public static class Builder {
+
+		private Layout layout;
+
+		// False once a line couldn't be used (i.e.: older version)
+		private boolean valid = true;
+		private int nRows = 0;
+
+		private double[] min, max;
+		private boolean[] hasZoneMap;
+
+		// Hashes of the stored values, per field with a Bloom filter
+		private long[][] hashes;
+
+		public Builder(Layout layout) {
+			this.layout = layout;
+			reset();
+		}
+
+		// Adds a line (entry) of the block
+		public void addLine(String line) {
+
+			if(!valid) return;
+
+			if(rowVersion(line) != layout.schemaVersion) {
+				valid = false;
+				return;
+			}
+
+			int valueIndex = 0, valueStart = 0;
+			for(int c=0; c<line.length() && valueIndex<layout.types.length; c++) {
+				if(',' != line.charAt(c)) continue;
+
+				addValue(valueIndex, line.substring(valueStart, c).trim());
+				valueStart = c + 1;
+				valueIndex++;
+			}
+
+			if(valueIndex < layout.types.length) valid = false;
+			nRows++;
+		}
+
+		private void addValue(int column, String token) {
+
+			if(layout.bloomFilters[column]) {
+				if(nRows >= hashes[column].length) {
+					hashes[column] = Arrays.copyOf(hashes[column], Math.max(16, nRows * 2));
+				}
+				hashes[column][nRows] = hash(bloomToken(layout.types[column], token));
+			}
+
+			if(!hasZoneMap[column]) return;
+
+			double value;
+			try {
+				value = parseNumber(layout.types[column], token);
+			} catch (NumberFormatException e) {
+				// Not a number (i.e.: corrupted line)
+				hasZoneMap[column] = false;
+				return;
+			}
+
+			// NaN can't be ordered, don't skip anything
+			if(Double.isNaN(value)) {
+				hasZoneMap[column] = false;
+				return;
+			}
+
+			min[column] = Math.min(min[column], value);
+			max[column] = Math.max(max[column], value);
+		}
+
+		// Returns the statistics of the lines added since the
+		// last call, or null if they have none, then starts over
+		public BlockStats build() {
+
+			BlockStats stats = null;
+
+			if(valid && nRows > 0) {
+				stats = new BlockStats();
+
+				for(int c=0; c<layout.types.length; c++) {
+					ColumnStats column = new ColumnStats();
+					column.columnId = layout.columnIds[c];
+					column.hasZoneMap = hasZoneMap[c];
+					column.min = min[c];
+					column.max = max[c];
+
+					if(layout.bloomFilters[c]) {
+						column.bloomFilter = buildBloomFilter(hashes[c], nRows);
+					}
+
+					if(column.hasZoneMap || null != column.bloomFilter) {
+						stats.columns.add(column);
+					}
+				}
+			}
+
+			reset();
+			return stats;
+		}
+
+		private void reset() {
+
+			int nColumns = layout.types.length;
+
+			valid = true;
+			nRows = 0;
+			min = new double[nColumns];
+			max = new double[nColumns];
+			hasZoneMap = new boolean[nColumns];
+			hashes = new long[nColumns][];
+
+			for(int c=0; c<nColumns; c++) {
+				min[c] = Double.POSITIVE_INFINITY;
+				max[c] = Double.NEGATIVE_INFINITY;
+				hasZoneMap[c] = isNumeric(layout.types[c]);
+				if(layout.bloomFilters[c]) hashes[c] = new long[16];
+			}
+		}
+	}
+
+	private static long[] buildBloomFilter(long[] hashes, int nRows) {
+
+		int nWords = Math.max(1, (nRows * BLOOMBITSPERENTRY + 63) / 64);
+		long[] bloomFilter = new long[nWords];
+
+		for(int r=0; r<nRows; r++) {
+			for(int h=0; h<BLOOMHASHES; h++) {
+				int bit = bloomBit(hashes[r], h, nWords * 64);
+				bloomFilter[bit >>> 6] |= (1L << bit);
+			}
+		}
+
+		return bloomFilter;
+	}
+
+	// Returns the schema version tag (@<version>) of a line, or 0
+	private static int rowVersion(String line) {
+
+		String tail = line.substring(line.lastIndexOf(',') + 1).trim();
+		if(0 >= tail.length() || '@' != tail.charAt(0)) return 0;
+
+		try {
+			return Integer.parseInt(tail.substring(1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	//###################################################//
+	//##################### HELPERS #####################//
+	//###################################################//
+
+	// Whether fields of type "type" get a zone map
+	public static boolean isNumeric(int type) {
+		return AbstractArray.ATR_INT == type ||
+				AbstractArray.ATR_DBL == type ||
+				AbstractArray.ATR_FLT == type;
+	}
+
+	// Returns the value of a numeric type, as compared in zone maps
+	public static double toNumber(Object value) {
+		return ((Number) value).doubleValue();
+	}
+
+	// Parses a stored numeric value, as compared in zone maps
+	// (floats are parsed as floats first, to match toNumber())
+	private static double parseNumber(int type, String token) {
+		switch(type) {
+		case AbstractArray.ATR_INT:
+			return Integer.parseInt(token);
+		case AbstractArray.ATR_FLT:
+			return Float.parseFloat(token);
+		default:
+			return Double.parseDouble(token);
+		}
+	}
+
+	// Returns the form of the stored value "token", of type "type",
+	// hashed in Bloom filters: ATR_INT values may be stored with
+	// leading zeros or a '+', and are hashed as Integer.toString()
+	// would write them. Other values are hashed as stored.
+	public static String bloomToken(int type, String token) {
+
+		if(AbstractArray.ATR_INT != type) return token;
+
+		try {
+			return Integer.toString(Integer.parseInt(token));
+		} catch (NumberFormatException e) {
+			// Not a number (i.e.: corrupted line), can't be found
+			return token;
+		}
+	}
+
+	// 64 bit FNV-1a hash of a stored value
+	private static long hash(String token) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i=0; i<token.length(); i++) {
+			hash ^= token.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// Bit of the "h"-th hash (double hashing on both halves)
+	private static int bloomBit(long hash, int h, int nBits) {
+		int combined = (int) hash + h * (int) (hash >>> 32);
+		return (combined & Integer.MAX_VALUE) % nBits;
+	}
+
+	//###################################################//
+	//################# (DE)SERIALIZING #################//
+	//###################################################//
+
+	public void write(DataOutput out) throws IOException {
+
+		out.writeInt(columns.size());
+		for(ColumnStats column : columns) {
+			out.writeInt(column.columnId);
+			out.writeByte((column.hasZoneMap ? HASZONEMAP : 0) |
+					(null != column.bloomFilter ? HASBLOOMFILTER | CANONICALTOKENS : 0));
+
+			if(column.hasZoneMap) {
+				out.writeDouble(column.min);
+				out.writeDouble(column.max);
+			}
+
+			if(null != column.bloomFilter) {
+				out.writeInt(column.bloomFilter.length);
+				for(long word : column.bloomFilter) {
+					out.writeLong(word);
+				}
+			}
+		}
+	}
+
+	public static BlockStats read(DataInput in) throws IOException {
+
+		BlockStats stats = new BlockStats();
+
+		int nColumns = in.readInt();
+		for(int c=0; c<nColumns; c++) {
+			ColumnStats column = new ColumnStats();
+			column.columnId = in.readInt();
+			byte flags = in.readByte();
+
+			if(0 != (flags & HASZONEMAP)) {
+				column.hasZoneMap = true;
+				column.min = in.readDouble();
+				column.max = in.readDouble();
+			}
+
+			if(0 != (flags & HASBLOOMFILTER)) {
+				long[] bloomFilter = new long[in.readInt()];
+				for(int w=0; w<bloomFilter.length; w++) {
+					bloomFilter[w] = in.readLong();
+				}
+
+				// Older filters may miss non-canonical values
+				if(0 != (flags & CANONICALTOKENS)) column.bloomFilter = bloomFilter;
+			}
+
+			stats.columns.add(column);
+		}
+
+		return stats;
+	}
+}
@@ -0,0 +1,65 @@
+package main;
+
+// Represents a single committed change of a Database
+// No encapsulation since this is a simple data holder.
+//
+// The serialized ChangeEvent format (in <data>.txt.changes)
+// should be as follows:
+// 1| <sequence>, <operation>, <index>,
+// 2| <[before]>,
+// 3| <[after]>,
+//
+// before/after are written like a line of <data>.txt (with
+// every value in plain text), and left empty when null.
+// OP_REORDER changes write their order instead of before, as a
+// list of real indices (<[order]>,), and an index of -1.
+
+public class ChangeEvent {
+	
+	//########## Static Operation codes ##########//
+	public static final int 
+		OP_ADD = 0, // addAbstractEntry (or bulk import)
+		OP_SET = 1, // setAbstractEntry
+		OP_REMOVE = 2, // removeAbstractEntry
+		OP_REORDER = 3; // Clustering sort (setClusteringKey, mergeDelta)
+	
+	//######## Static Operation String constants ########//
+	public static final String 
+		STROP_ADD = "ADD",
+		STROP_SET = "SET",
+		STROP_REMOVE = "REMOVE",
+		STROP_REORDER = "REORDER";
+	
+	// Increasing number of the change, unique per Database
+	public long sequence;
+	
+	// Operation code (OP_*)
+	public int operation;
+	
+	// Real index of the changed entry (-1 for OP_REORDER)
+	public int index;
+	
+	// Entry before the change (null for OP_ADD)
+	public AbstractArray before;
+	
+	// Entry after the change (null for OP_REMOVE)
+	public AbstractArray after;
+	
+	// Only for OP_REORDER: for each real index, the real index the
+	// entry now there had before. Every entry may have moved.
+	public int[] order;
+	
+	public ChangeEvent(long sequence, int operation, int index, 
+			AbstractArray before, AbstractArray after) {
+		this.sequence=sequence;
+		this.operation=operation;
+		this.index=index;
+		this.before=before;
+		this.after=after;
+	}
+	
+	public ChangeEvent(long sequence, int[] order) {
+		this(sequence, OP_REORDER, -1, null, null);
+		this.order=order;
+	}
+}
@@ -0,0 +1,8 @@
+package main;
+
+// Receives the changes committed on a DatabaseMS, 
+// in sequence order, right after they are written
+public interface ChangeListener {
+	
+	public void onChange(ChangeEvent event);
+}
@@ -1,10 +1,23 @@
 package main;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
 
 // Database Management System Class
 // Template value "T" refers to the specific datatype used by 
@@ -23,6 +36,12 @@ public class DatabaseMS<T> {
 	// of the last operation performed
 	private int lastOperationStatus = 0;
 	
+	// Used by the default getData/addData/setData/removeData
+	private RecordCodec<T> codec = null;
+	
+	// Notified after each committed change
+	private ArrayList<ChangeListener> changeListeners = new ArrayList<ChangeListener>();
+	
 	//############### ERROR CODES ###############//
 	public static final int OPERATIONSUCCESS = 0;
 	public static final int NONEXISTANTID = 1;
@@ -34,6 +53,23 @@ public class DatabaseMS<T> {
 	public static final int INVALIDMETADATAFORMAT = 7;
 	public static final int INVALIDSEARCHCRITERIA = 8;
 	
+	//########## BULK IMPORT/EXPORT FORMATS ##########//
+	public static final int BULK_CSV = 0;
+	public static final int BULK_BINARY = 1;
+	
+	// Amount of entries validated and written at once
+	// during a bulk import
+	public static final int BULKBATCHSIZE = 4096;
+	
+	// Entries processed by the last bulk import/export,
+	// and the rate at which they were processed
+	private int lastBulkRowCount = 0;
+	private double lastBulkRowsPerSecond = 0;
+	
+	// Compressed blocks read and skipped by the last find
+	private int lastScannedBlockCount = 0;
+	private int lastSkippedBlockCount = 0;
+	
 	public DatabaseMS(String dbFilePath, String metaFilePath) {
 		this.dbFilePath=dbFilePath;
 		this.metaFilePath=metaFilePath;
@@ -66,6 +102,28 @@ public class DatabaseMS<T> {
 		return valid;
 	}
 	
+	// Checks that "value" is non null and of the Java type 
+	// matching the type code "type"
+	private boolean validateValueType(Object value, int type) {
+		
+		switch(type) {
+		case AbstractArray.ATR_INT:
+			return value instanceof Integer;
+		case AbstractArray.ATR_STR:
+			return value instanceof String;
+		case AbstractArray.ATR_DBL:
+			return value instanceof Double;
+		case AbstractArray.ATR_FLT:
+			return value instanceof Float;
+		case AbstractArray.ATR_CHR:
+			return value instanceof Character;
+		case AbstractArray.ATR_BOL:
+			return value instanceof Boolean;
+		default:
+			return false;
+		}
+	}
+	
 	//###################################################//
 	//################ CORE OPERATIONS ##################//
 	//############# (get/add/set/remove) ################//
@@ -88,13 +146,34 @@ public class DatabaseMS<T> {
 		
 		AbstractArray getResult = null;
 		
-		// First deserialize both data and metadata files
-		ArrayList<String> dataStrArr = deserializeFile(dbFilePath);
-		ArrayList<String> metadataStrArr = deserializeFile(metaFilePath);
+		// A current startup image doesn't need any parsing
+		try(TableImage image = openCurrentImage()) {
+			if(null != image) {
+				getResult = image.getAbstractEntry(index);
+				if(null == getResult) lastOperationStatus = NONEXISTANTID;
+				return getResult;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		
-		// Then parse the string arrays
-		DatabaseMetadata dbMetadata = parseMetadataFromStrArr(metadataStrArr);
-		ArrayList<AbstractArray> entries = parseDataFromStrArr(dataStrArr, dbMetadata);
+		// First deserialize and parse the metadata file
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return null;
+		
+		// Compressed data only needs the block holding the entry
+		if(DatabaseMetadata.COMPRESSION_NONE != dbMetadata.compression) {
+			try {
+				return parseEntryFromStr(readBlockLine(index, dbMetadata), dbMetadata);
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return null;
+			}
+		}
+		
+		// Then deserialize and parse the data file
+		ArrayList<AbstractArray> entries = parseDataFromStrArr(readDataLines(dbMetadata), dbMetadata);
+		if(null == entries) return null;
 		
 		// Avoid an out-of-bounds index
 		if(entries.size() > index) {
@@ -106,267 +185,2151 @@ public class DatabaseMS<T> {
 		return getResult;
 	}
 	
+	// Get every AbstractArray, in real index order
+	// Returns an empty array for an empty database
+	public ArrayList<AbstractArray> getAllAbstractEntries() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		// A current startup image doesn't need any parsing
+		try(TableImage image = openCurrentImage()) {
+			if(null != image) {
+				ArrayList<AbstractArray> entries = image.getAllAbstractEntries();
+				if(null != entries) return entries;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return new ArrayList<AbstractArray>();
+		
+		ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+		if(null == dataStrArr) return new ArrayList<AbstractArray>();
+		
+		ArrayList<AbstractArray> entries = parseDataFromStrArr(dataStrArr, dbMetadata);
+		return (null == entries) ? new ArrayList<AbstractArray>() : entries;
+	}
+	
 	// Appends an AbstractArray "newObj" to the database
 	public void addAbstractEntry(AbstractArray newObj) {
 
 		// Set to success by default
 		lastOperationStatus = OPERATIONSUCCESS;
 		
-		// Then parse the string arrays
-		//ArrayList<String> dataStrArr = deserializeFile(dbFilePath);
-		//ArrayList<String> metadataStrArr = deserializeFile(metaFilePath);
+		synchronized(writeLock()) {
+			// Then parse the string arrays
+			//ArrayList<String> dataStrArr = deserializeFile(dbFilePath);
+			//ArrayList<String> metadataStrArr = deserializeFile(metaFilePath);
+					
+			// First deserialize both data and metadata files
+			DatabaseMetadata dbMetadata = loadMetadata();
+			ArrayList<AbstractArray> entries = parseDataFromStrArr(readDataLines(dbMetadata), dbMetadata);
+			if(null == entries) return;
+			
+			// Check the format of "newObj"
+			boolean correctFormat = validateAbstractArray(newObj, dbMetadata);
+			
+			if(correctFormat) {
+				entries.add(newObj);
 				
-		// First deserialize both data and metadata files
-		DatabaseMetadata dbMetadata = parseMetadataFromStrArr(deserializeFile(metaFilePath));
-		ArrayList<AbstractArray> entries = parseDataFromStrArr(deserializeFile(dbFilePath), dbMetadata);
+				if(verbose) {				
+					System.out.print("\nNew set of entries:\n");
+					System.out.print("---------------------\n");
+					for(AbstractArray e : entries) {
+						e.printElements();
+					}
+					System.out.print("---------------------\n\n");
+				}
+				
+				dbMetadata.nEntries++;
+				
+				ChangeEvent change = new ChangeEvent(0, ChangeEvent.OP_ADD, entries.size() - 1, null, newObj);
+				
+				// Serialize <data>.txt, then <metadata.txt>
+				commit(dbMetadata, unparseDataToStrArr(entries, dbMetadata), change);
+				
+			} else {
+				// Error
+				lastOperationStatus = INVALIDDATAFORMAT;
+			}
+		}
+	}
+	
+	// Sets an AbstractArray "newObj" at real index "index"
+	public void setAbstractEntry(int index, AbstractArray newObj) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			// First, load the metadata 
+			DatabaseMetadata dbMetadata = loadMetadata();
+			
+			// Check that the index is valid
+			if(index >= dbMetadata.nElements) {
+				lastOperationStatus = NONEXISTANTID;
+				return;
+			}
+			
+			// Check the correct format of "newObj"
+			boolean correctFormat = validateAbstractArray(newObj, dbMetadata);
+			if(!correctFormat) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return;
+			}
+			
+			// If everything is valid, proceed to load the actual data
+			ArrayList<AbstractArray> absArr = parseDataFromStrArr(readDataLines(dbMetadata), dbMetadata);
+			if(null == absArr) return;
+		
+			// Modify the entry
+			AbstractArray oldObj = absArr.set(index, newObj);
+			
+			ChangeEvent change = new ChangeEvent(0, ChangeEvent.OP_SET, index, oldObj, newObj);
+			
+			// Serialize the modified array data, then the metadata
+			// (unparsed first, since it may add values to the dictionaries)
+			commit(dbMetadata, unparseDataToStrArr(absArr, dbMetadata), change);
+		}
+	}
+
+	// Removes an AbstractArray at real index "index"
+	public void removeAbstractEntry(int index) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;		
+		
+		synchronized(writeLock()) {
+			// First, load the metadata 
+			DatabaseMetadata dbMetadata = loadMetadata();
+					
+			// Check that the index is valid
+			if(index >= dbMetadata.nEntries) {
+				lastOperationStatus = NONEXISTANTID;
+				return;
+			}
+			
+			// If everything is valid, proceed to load the actual data
+			ArrayList<AbstractArray> absArr = parseDataFromStrArr(readDataLines(dbMetadata), dbMetadata);
+			if(null == absArr) return;
+				
+			// Modify the entry
+			AbstractArray oldObj = absArr.remove(index);
+			
+			// Update metadata
+			dbMetadata.nEntries--;
+			
+			ChangeEvent change = new ChangeEvent(0, ChangeEvent.OP_REMOVE, index, oldObj, null);
+			
+			// Serialize the modified array data, then the metadata
+			// (unparsed first, since it may add values to the dictionaries)
+			commit(dbMetadata, unparseDataToStrArr(absArr, dbMetadata), change);
+		}
+	}
+	
+	// Returns the real indices of every entry whose value at 
+	// "column" equals "value". Only that value is parsed from
+	// each entry, and dictionary encoded columns compare codes 
+	// instead of Strings.
+	public ArrayList<Integer> findAbstractEntries(int column, Object value) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return new ArrayList<Integer>();
+		
+		// Check that the criteria matches the column type
+		if(column < 0 || column >= dbMetadata.nElements || 
+			!validateValueType(value, dbMetadata.types[column])) {
+			lastOperationStatus = INVALIDSEARCHCRITERIA;
+			return new ArrayList<Integer>();
+		}
+		
+		// Clustering keys are binary searched
+		if(column == getClusterColumn(dbMetadata)) {
+			return findClusteredEntries(dbMetadata, column, value, value);
+		}
+		
+		StringDictionary dictionary = dbMetadata.dictionaries.get(dbMetadata.columnIds[column]);
+		int code = -1;
+		if(null != dictionary) {
+			code = dictionary.getCode((String) value);
+			
+			// A value missing from the dictionary matches nothing
+			if(code < 0) return new ArrayList<Integer>();
+		}
+		
+		// Blocks are skipped if the value is out of their
+		// min/max, or missing from their Bloom filter
+		int columnId = dbMetadata.columnIds[column];
+		String token = (null != dictionary) ? Integer.toString(code) : 
+				BlockStats.bloomToken(dbMetadata.types[column], value.toString().trim());
+		boolean numeric = BlockStats.isNumeric(dbMetadata.types[column]);
+		
+		int dictionaryCode = code;
+		return scanEntries(dbMetadata, 
+			stats -> stats.mayContain(columnId, token) &&
+				(!numeric || stats.mayOverlap(columnId, 
+						BlockStats.toNumber(value), BlockStats.toNumber(value))),
+			line -> {
+				String rawValue = extractCurrentValueFromStr(line, column, dbMetadata);
+				
+				if(null == rawValue) {
+					// Older schema version, parse the whole entry
+					AbstractArray entry = parseEntryFromStr(line, dbMetadata);
+					return (null != entry) && value.equals(entry.elements[column]);
+				} else if(null != dictionary) {
+					return (dictionaryCode == Integer.parseInt(rawValue));
+				} else {
+					return value.equals(parseValueFromStr(dbMetadata.types[column], rawValue));
+				}
+			});
+	}
+	
+	// Finds the real indices of the entries whose numeric 
+	// (ATR_INT/DBL/FLT) field "column" is within [min, max]
+	// Compressed blocks out of that range aren't read
+	// Clustering keys can be of any type, and are binary searched
+	public ArrayList<Integer> findAbstractEntriesInRange(int column, Object min, Object max) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return new ArrayList<Integer>();
+		
+		// Check that the criteria matches the column type
+		if(column < 0 || column >= dbMetadata.nElements || 
+			!validateValueType(min, dbMetadata.types[column]) ||
+			!validateValueType(max, dbMetadata.types[column])) {
+			lastOperationStatus = INVALIDSEARCHCRITERIA;
+			return new ArrayList<Integer>();
+		}
+		
+		if(column == getClusterColumn(dbMetadata)) {
+			return findClusteredEntries(dbMetadata, column, min, max);
+		}
+		
+		if(!BlockStats.isNumeric(dbMetadata.types[column])) {
+			lastOperationStatus = INVALIDSEARCHCRITERIA;
+			return new ArrayList<Integer>();
+		}
+		
+		int columnId = dbMetadata.columnIds[column];
+		
+		@SuppressWarnings("unchecked")
+		Comparable<Object> minValue = (Comparable<Object>) min;
+		@SuppressWarnings("unchecked")
+		Comparable<Object> maxValue = (Comparable<Object>) max;
+		
+		return scanEntries(dbMetadata, 
+			stats -> stats.mayOverlap(columnId, BlockStats.toNumber(min), BlockStats.toNumber(max)),
+			line -> {
+				String rawValue = extractCurrentValueFromStr(line, column, dbMetadata);
+				
+				Object value;
+				if(null == rawValue) {
+					// Older schema version, parse the whole entry
+					AbstractArray entry = parseEntryFromStr(line, dbMetadata);
+					if(null == entry) return false;
+					value = entry.elements[column];
+				} else {
+					value = parseValueFromStr(dbMetadata.types[column], rawValue);
+				}
+				
+				return minValue.compareTo(value) <= 0 && maxValue.compareTo(value) >= 0;
+			});
+	}
+	
+	// Returns the real indices of the entries whose line matches 
+	// "lineMatch". Compressed blocks whose BlockStats don't pass 
+	// "blockMatch" are skipped without being read
+	private ArrayList<Integer> scanEntries(DatabaseMetadata dbMetadata, 
+			Predicate<BlockStats> blockMatch, Predicate<String> lineMatch) {
 		
-		// Check the format of "newObj"
-		boolean correctFormat = validateAbstractArray(newObj, dbMetadata);
+		ArrayList<Integer> result = new ArrayList<Integer>();
+		lastScannedBlockCount = 0;
+		lastSkippedBlockCount = 0;
 		
-		if(correctFormat) {
-			entries.add(newObj);
+		try {
+			if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) {
+				
+				try(BufferedReader reader = openDataReader(dbMetadata)) {
+					
+					String line;
+					int index = 0;
+					while(null != (line = reader.readLine())) {
+						
+						// Empty lines aren't entries
+						if(0 >= line.length()) continue;
+						
+						if(lineMatch.test(line)) result.add(index);
+						index++;
+					}
+				}
+				
+				return result;
+			}
 			
-			if(verbose) {				
-				System.out.print("\nNew set of entries:\n");
-				System.out.print("---------------------\n");
-				for(AbstractArray e : entries) {
-					e.printElements();
+			// A missing <data>.txt has no entries
+			try(RandomAccessFile raf = BlockDataFile.openFile(dbFilePath)) {
+				if(null == raf) return result;
+				
+				for(BlockDataFile.BlockInfo block : BlockDataFile.readDirectory(raf)) {
+					
+					// Blocks without stats always have to be read
+					if(null != block.stats && !blockMatch.test(block.stats)) {
+						lastSkippedBlockCount++;
+						continue;
+					}
+					
+					lastScannedBlockCount++;
+					
+					ArrayList<String> lines = BlockDataFile.readBlock(raf, block);
+					for(int l=0; l<lines.size(); l++) {
+						if(lineMatch.test(lines.get(l))) result.add(block.firstRow + l);
+					}
 				}
-				System.out.print("---------------------\n\n");
 			}
 			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+		} catch (NumberFormatException | IndexOutOfBoundsException | ClassCastException e) {
+			lastOperationStatus = INVALIDDATAFORMAT;
+		}
+		
+		return result;
+	}
+	
+	//---------- SPECIFIC CORE OPERATIONS -------------//
+	// Manipulate specific classes stored by the       //
+	// specific database.  						       //
+	// Use the real a search criteria inherent to the  //
+	// entry (i.e.: "objectID", "username", etc).      //
+	// These need to be overriden in the child classes,//
+	// unless a RecordCodec is bound (bindSchema()).   //
+	//-------------------------------------------------//
+	
+	// Binds the RecordCodec used by the default getData/
+	// addData/setData/removeData, which then read/write T
+	// straight from/to the lines of <data>.txt. The codec 
+	// types must match the metadata types.
+	public void bindSchema(RecordCodec<T> codec) {
+		this.codec = codec;
+	}
+	
+	// Get the T at real index "index"
+	// Only that entry is parsed
+	public T getData(int index) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		DatabaseMetadata dbMetadata = loadBoundMetadata();
+		if(null == dbMetadata) return null;
+		
+		String line = readDataLine(index, dbMetadata);
+		if(null == line) return null;
+		
+		T getResult = null;
+		try {
+			getResult = parseTypedFromStr(line, dbMetadata);
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			getResult = null;
+		}
+		
+		if(null == getResult) lastOperationStatus = INVALIDDATAFORMAT;
+		
+		return getResult;
+	}
+	
+	// Appends a T "newEntry" to the database
+	// The other entries are not parsed
+	public void addData(T newEntry) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadBoundMetadata();
+			if(null == dbMetadata) return;
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			removeEmptyLines(dataStrArr);
+			
+			String newLine = unparseTypedToStr(newEntry, dbMetadata);
+			if(null == newLine) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return;
+			}
+			
+			dataStrArr.add(newLine);
 			dbMetadata.nEntries++;
 			
-			// Serialize <data>.txt
-			serializeFile(this.dbFilePath, unparseDataToStrArr(entries));
+			ChangeEvent change = new ChangeEvent(0, ChangeEvent.OP_ADD, dataStrArr.size() - 1, 
+					null, parseEntryForChange(newLine, dbMetadata));
+			
+			commit(dbMetadata, dataStrArr, change);
+		}
+	}
+	
+	// Sets a T "newEntry" at real index "index"
+	// The other entries are not parsed
+	public void setData(int index, T newEntry) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadBoundMetadata();
+			if(null == dbMetadata) return;
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			removeEmptyLines(dataStrArr);
 			
-			// Serialize <metadata.txt>
-			serializeFile(this.metaFilePath, unparseMetadataToStrArr(dbMetadata));
+			// Check that the index is valid
+			if(index < 0 || index >= dataStrArr.size()) {
+				lastOperationStatus = NONEXISTANTID;
+				return;
+			}
 			
-		} else {
-			// Error
+			String newLine = unparseTypedToStr(newEntry, dbMetadata);
+			if(null == newLine) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return;
+			}
+			
+			String oldLine = dataStrArr.set(index, newLine);
+			
+			ChangeEvent change = new ChangeEvent(0, ChangeEvent.OP_SET, index, 
+					parseEntryForChange(oldLine, dbMetadata), parseEntryForChange(newLine, dbMetadata));
+			
+			commit(dbMetadata, dataStrArr, change);
+		}
+	}
+	
+	// Removes the T at real index "index"
+	// The other entries are not parsed
+	public void removeData(int index) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadBoundMetadata();
+			if(null == dbMetadata) return;
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			removeEmptyLines(dataStrArr);
+			
+			// Check that the index is valid
+			if(index < 0 || index >= dataStrArr.size()) {
+				lastOperationStatus = NONEXISTANTID;
+				return;
+			}
+			
+			String oldLine = dataStrArr.remove(index);
+			dbMetadata.nEntries--;
+			
+			ChangeEvent change = new ChangeEvent(0, ChangeEvent.OP_REMOVE, index, 
+					parseEntryForChange(oldLine, dbMetadata), null);
+			
+			commit(dbMetadata, dataStrArr, change);
+		}
+	}
+	
+	// Loads the metadata, checking that a RecordCodec is bound
+	// and matches it. Returns null otherwise
+	private DatabaseMetadata loadBoundMetadata() {
+		
+		if(null == codec) {
+			lastOperationStatus = INVALIDMETADATAFORMAT;
+			return null;
+		}
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return null;
+		
+		if(!Arrays.equals(codec.types, dbMetadata.types)) {
+			lastOperationStatus = INVALIDMETADATAFORMAT;
+			return null;
+		}
+		
+		return dbMetadata;
+	}
+	
+	//###################################################//
+	//############### STORAGE OPERATIONS ################//
+	//###################################################//
+	
+	// Changes how <data>.txt is stored on disk, rewriting it
+	// "compression" is one of DatabaseMetadata.COMPRESSION_*, and 
+	// "blockSize" the amount of entries per compressed block.
+	// Bigger blocks compress better, smaller blocks make
+	// getAbstractEntry() decompress less.
+	public void setCompression(int compression, int blockSize) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			if((DatabaseMetadata.COMPRESSION_NONE != compression && 
+				DatabaseMetadata.COMPRESSION_DEFLATE != compression) ||
+				blockSize <= 0) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return;
+			}
+			
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			// Load the data in its current format
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			
+			dbMetadata.compression = compression;
+			dbMetadata.blockSize = blockSize;
+			
+			// Write the data in the new format, then the metadata
+			commit(dbMetadata, dataStrArr);
+		}
+	}
+	
+	// Turns the Bloom filter of the key (ATR_STR/ATR_INT) field 
+	// "column" on/off, rewriting <data>.txt so that every 
+	// compressed block gets (or loses) it. Only used when 
+	// <data>.txt is compressed (see setCompression())
+	public void setBloomFilter(int column, boolean enabled) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			if(column < 0 || column >= dbMetadata.nElements ||
+				(AbstractArray.ATR_STR != dbMetadata.types[column] && 
+				AbstractArray.ATR_INT != dbMetadata.types[column])) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return;
+			}
+			
+			Integer columnId = dbMetadata.columnIds[column];
+			
+			// Already in the requested state
+			if(enabled == dbMetadata.bloomFilters.contains(columnId)) return;
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			
+			if(enabled) {
+				dbMetadata.bloomFilters.add(columnId);
+			} else {
+				dbMetadata.bloomFilters.remove(columnId);
+			}
+			
+			// Write the blocks with the new stats, then the metadata
+			commit(dbMetadata, dataStrArr);
+		}
+	}
+	
+	// Turns dictionary encoding of the ATR_STR column "column" on/off,
+	// rewriting <data>.txt with codes (or values) for that column.
+	// Dictionaries are serialized next to <metadata>.txt
+	public void setDictionaryEncoding(int column, boolean enabled) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			if(column < 0 || column >= dbMetadata.nElements ||
+				AbstractArray.ATR_STR != dbMetadata.types[column]) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return;
+			}
+			
+			int columnId = dbMetadata.columnIds[column];
+			
+			// Already in the requested state
+			if(enabled == dbMetadata.dictionaries.containsKey(columnId)) return;
+			
+			// Load the data with the current dictionaries
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			ArrayList<AbstractArray> entries = parseDataFromStrArr(dataStrArr, dbMetadata);
+			if(null == entries) return;
+			
+			if(enabled) {
+				dbMetadata.dictionaries.put(columnId, new StringDictionary());
+			} else {
+				dbMetadata.dictionaries.remove(columnId);
+			}
+			
+			// Write the data with the new dictionaries, then the metadata
+			commit(dbMetadata, unparseDataToStrArr(entries, dbMetadata));
+		}
+	}
+	
+	//###################################################//
+	//################ SCHEMA OPERATIONS ################//
+	//###################################################//
+	
+	// Schema changes only rewrite <metadata>.txt, whatever the
+	// size of <data>.txt. Entries keep the schema version they
+	// were written with, and are upgraded when read: dropped
+	// fields are left out, added fields get their default value.
+	// compact() rewrites every entry with the current version.
+	
+	// Adds a field of type "type" (AbstractArray.ATR_*) after the 
+	// last one. Existing entries read "defaultValue" for that field
+	public void addColumn(int type, Object defaultValue) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			// The default is serialized in <metadata>.txt as a plain value
+			if(null == defaultValue || 
+				!validateValueType(defaultValue, type) ||
+				0 >= defaultValue.toString().length() ||
+				0 <= defaultValue.toString().indexOf(',') ||
+				0 <= defaultValue.toString().indexOf('\n')) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return;
+			}
+			
+			int columnId = dbMetadata.nextColumnId++;
+			dbMetadata.columnTypes.put(columnId, type);
+			dbMetadata.columnDefaults.put(columnId, defaultValue);
+			
+			int[] columnIds = Arrays.copyOf(dbMetadata.columnIds, dbMetadata.nElements + 1);
+			columnIds[dbMetadata.nElements] = columnId;
+			
+			int[] types = Arrays.copyOf(dbMetadata.types, dbMetadata.nElements + 1);
+			types[dbMetadata.nElements] = type;
+			
+			commitSchemaVersion(dbMetadata, columnIds, types);
+		}
+	}
+	
+	// Drops the field at "column". Existing entries keep its 
+	// value until compact() is called, but it can't be read anymore
+	public void dropColumn(int column) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			// Keep at least one field
+			if(column < 0 || column >= dbMetadata.nElements || dbMetadata.nElements <= 1) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return;
+			}
+			
+			int[] columnIds = new int[dbMetadata.nElements - 1];
+			int[] types = new int[dbMetadata.nElements - 1];
+			
+			for(int c=0, n=0; c<dbMetadata.nElements; c++) {
+				if(c == column) continue;
+				
+				columnIds[n] = dbMetadata.columnIds[c];
+				types[n] = dbMetadata.types[c];
+				n++;
+			}
+			
+			// The table isn't clustered anymore without its key
+			if(dbMetadata.clusterColumnId == dbMetadata.columnIds[column]) {
+				dbMetadata.clusterColumnId = -1;
+				dbMetadata.sortedEntries = 0;
+			}
+			
+			// Old entries can still hold codes of a dropped
+			// field's dictionary, keep it until compact()
+			commitSchemaVersion(dbMetadata, columnIds, types);
+		}
+	}
+	
+	// Rewrites every entry of <data>.txt with the current schema
+	// version, and drops the dictionaries (and Bloom filters) of 
+	// dropped fields
+	public void compact() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			ArrayList<AbstractArray> entries = parseDataFromStrArr(dataStrArr, dbMetadata);
+			if(null == entries) return;
+			
+			// Dropped fields are not read anymore
+			ArrayList<Integer> droppedIds = new ArrayList<Integer>();
+			for(int columnId : dbMetadata.dictionaries.keySet()) {
+				boolean current = false;
+				for(int c=0; c<dbMetadata.nElements; c++) {
+					current |= (columnId == dbMetadata.columnIds[c]);
+				}
+				if(!current) droppedIds.add(columnId);
+			}
+			for(int columnId : droppedIds) {
+				dbMetadata.dictionaries.remove(columnId);
+			}
+			
+			// Same for the Bloom filters
+			dbMetadata.bloomFilters.removeIf(columnId -> {
+				for(int c=0; c<dbMetadata.nElements; c++) {
+					if(columnId == dbMetadata.columnIds[c]) return false;
+				}
+				return true;
+			});
+			
+			commit(dbMetadata, unparseDataToStrArr(entries, dbMetadata));
+		}
+	}
+	
+	// Makes "columnIds" (of types "types") the fields of a 
+	// new schema version, and commits the metadata only
+	private void commitSchemaVersion(DatabaseMetadata dbMetadata, int[] columnIds, int[] types) {
+		
+		dbMetadata.versionColumnIds.add(columnIds);
+		dbMetadata.schemaVersion = dbMetadata.versionColumnIds.size() - 1;
+		dbMetadata.columnIds = columnIds;
+		dbMetadata.types = types;
+		dbMetadata.nElements = types.length;
+		
+		commit(dbMetadata, null);
+	}
+	
+	//###################################################//
+	//################### CLUSTERING ####################//
+	//###################################################//
+	
+	// A clustered table keeps its entries sorted by a key field:
+	// the first DatabaseMetadata.sortedEntries entries are sorted,
+	// the ones added after them form an unsorted delta. Lookups on 
+	// the key binary search the sorted entries, reading only the 
+	// blocks they land on, and scan the delta only.
+	// Commits merge the delta into the sorted entries once it gets
+	// too big (see DatabaseMetadata.MINDELTAENTRIES), which changes
+	// the real indices of the entries: every sort is published as an
+	// OP_REORDER change.
+	
+	// Clusters the table on field "column" (-1 to stop clustering),
+	// sorting every entry by it
+	public void setClusteringKey(int column) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			if(column < -1 || column >= dbMetadata.nElements) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return;
+			}
+			
+			if(-1 == column) {
+				dbMetadata.clusterColumnId = -1;
+				dbMetadata.sortedEntries = 0;
+				commit(dbMetadata, null);
+				return;
+			}
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			removeEmptyLines(dataStrArr);
+			
+			dbMetadata.clusterColumnId = dbMetadata.columnIds[column];
+			
+			int[] order;
+			try {
+				order = sortEntries(dbMetadata, dataStrArr);
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return;
+			}
+			
+			commit(dbMetadata, dataStrArr, newReorderChange(order));
+		}
+	}
+	
+	// Merges the delta of a clustered table into its sorted entries
+	public void mergeDelta() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			// Nothing to merge
+			if(dbMetadata.clusterColumnId < 0 || 
+				dbMetadata.sortedEntries >= dbMetadata.nEntries) return;
+			
+			ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+			if(null == dataStrArr) return;
+			removeEmptyLines(dataStrArr);
+			
+			int[] order;
+			try {
+				order = sortEntries(dbMetadata, dataStrArr);
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return;
+			}
+			
+			commit(dbMetadata, dataStrArr, newReorderChange(order));
+		}
+	}
+	
+	// Returns the index of the clustering key field, or -1
+	private int getClusterColumn(DatabaseMetadata dbMetadata) {
+		
+		for(int c=0; c<dbMetadata.nElements; c++) {
+			if(dbMetadata.clusterColumnId == dbMetadata.columnIds[c]) return c;
+		}
+		
+		return -1;
+	}
+	
+	// Whether the delta of a clustered table should be merged
+	private boolean isDeltaFull(DatabaseMetadata dbMetadata, int nEntries) {
+		
+		int deltaEntries = nEntries - dbMetadata.sortedEntries;
+		
+		return deltaEntries > DatabaseMetadata.MINDELTAENTRIES &&
+				deltaEntries > dbMetadata.sortedEntries / DatabaseMetadata.DELTARATIO;
+	}
+	
+	// Called before the lines of a clustered table are committed:
+	// shrinks its sorted entries to the ones still in order (i.e.: 
+	// after a set/remove), then merges the delta if it is full
+	// Returns the order of the merge (see sortEntries()), or null
+	private int[] maintainClustering(DatabaseMetadata dbMetadata, ArrayList<String> dataStrArr) {
+		
+		removeEmptyLines(dataStrArr);
+		
+		int column = getClusterColumn(dbMetadata);
+		int sortedEntries = Math.min(dbMetadata.sortedEntries, dataStrArr.size());
+		
+		Object previousKey = null;
+		for(int i=0; i<sortedEntries; i++) {
+			Object key = parseFieldFromStr(dataStrArr.get(i), column, dbMetadata);
+			
+			if(i > 0 && compareKeys(previousKey, key) > 0) {
+				sortedEntries = i;
+				break;
+			}
+			previousKey = key;
+		}
+		
+		dbMetadata.sortedEntries = sortedEntries;
+		
+		if(!isDeltaFull(dbMetadata, dataStrArr.size())) return null;
+		
+		return sortEntries(dbMetadata, dataStrArr);
+	}
+	
+	// Sorts every line by the clustering key (stable, so that 
+	// equal keys keep their order), making them all sorted entries
+	// Returns the previous index of each sorted line
+	private int[] sortEntries(DatabaseMetadata dbMetadata, ArrayList<String> dataStrArr) {
+		
+		int column = getClusterColumn(dbMetadata);
+		
+		// Parse each key once
+		Object[] keys = new Object[dataStrArr.size()];
+		ArrayList<Integer> order = new ArrayList<Integer>(dataStrArr.size());
+		for(int i=0; i<keys.length; i++) {
+			keys[i] = parseFieldFromStr(dataStrArr.get(i), column, dbMetadata);
+			order.add(i);
+		}
+		
+		order.sort((a, b) -> compareKeys(keys[a], keys[b]));
+		
+		int[] previousIndexes = new int[keys.length];
+		ArrayList<String> sortedStrArr = new ArrayList<String>(dataStrArr.size());
+		for(int i : order) {
+			previousIndexes[sortedStrArr.size()] = i;
+			sortedStrArr.add(dataStrArr.get(i));
+		}
+		
+		dataStrArr.clear();
+		dataStrArr.addAll(sortedStrArr);
+		dbMetadata.sortedEntries = dataStrArr.size();
+		
+		return previousIndexes;
+	}
+	
+	// Returns the OP_REORDER change of a sort in "order" (see 
+	// sortEntries()), or null if no entry moved
+	private ChangeEvent newReorderChange(int[] order) {
+		
+		for(int i=0; i<order.length; i++) {
+			if(order[i] != i) return new ChangeEvent(0, order);
+		}
+		
+		return null;
+	}
+	
+	// Makes "changes" (of a commit whose lines were then sorted in 
+	// "order") match the committed real indices: removed entries are
+	// removed first, then the entries that were already there are 
+	// reordered, and added/set entries are changed at their new index
+	private void addReorderChange(ArrayList<ChangeEvent> changes, int[] order) {
+		
+		ChangeEvent change = changes.isEmpty() ? null : changes.get(0);
+		
+		if(null == change || ChangeEvent.OP_REMOVE == change.operation) {
+			ChangeEvent reorder = newReorderChange(order);
+			if(null != reorder) changes.add(reorder);
+			return;
+		}
+		
+		// New index of the changed entry
+		int newIndex = 0;
+		while(order[newIndex] != change.index) newIndex++;
+		
+		// An added entry wasn't there before: leave it out
+		if(ChangeEvent.OP_ADD == change.operation) {
+			int[] previousOrder = new int[order.length - 1];
+			for(int i=0, n=0; i<order.length; i++) {
+				if(i == newIndex) continue;
+				previousOrder[n++] = (order[i] > change.index) ? order[i] - 1 : order[i];
+			}
+			order = previousOrder;
+		}
+		
+		ChangeEvent reorder = newReorderChange(order);
+		if(null != reorder) changes.add(0, reorder);
+		
+		change.index = newIndex;
+	}
+	
+	// Finds the real indices of the entries whose clustering key
+	// (at "column") is within [min, max]. Sorted entries are binary
+	// searched, the delta is scanned
+	private ArrayList<Integer> findClusteredEntries(DatabaseMetadata dbMetadata, int column, 
+			Object min, Object max) {
+		
+		ArrayList<Integer> result = new ArrayList<Integer>();
+		lastScannedBlockCount = 0;
+		lastSkippedBlockCount = 0;
+		
+		try(DataLineReader reader = new DataLineReader(dbMetadata)) {
+			if(OPERATIONSUCCESS != lastOperationStatus) return result;
+			
+			int sortedEntries = Math.min(dbMetadata.sortedEntries, reader.size);
+			
+			// First sorted entry not below "min"
+			int lo = 0, hi = sortedEntries;
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				Object key = parseFieldFromStr(reader.get(mid), column, dbMetadata);
+				
+				if(compareKeys(key, min) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			
+			// Then every one until "max"
+			for(int i=lo; i<sortedEntries; i++) {
+				Object key = parseFieldFromStr(reader.get(i), column, dbMetadata);
+				if(compareKeys(key, max) > 0) break;
+				
+				result.add(i);
+			}
+			
+			// The delta isn't sorted
+			for(int i=sortedEntries; i<reader.size; i++) {
+				Object key = parseFieldFromStr(reader.get(i), column, dbMetadata);
+				
+				if(null != key && compareKeys(key, min) >= 0 && compareKeys(key, max) <= 0) {
+					result.add(i);
+				}
+			}
+			
+			reader.countBlocks();
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+		} catch (NumberFormatException | IndexOutOfBoundsException | ClassCastException e) {
+			lastOperationStatus = INVALIDDATAFORMAT;
+		}
+		
+		return result;
+	}
+	
+	// Orders clustering keys, null (unreadable) ones first
+	@SuppressWarnings("unchecked")
+	private int compareKeys(Object a, Object b) {
+		
+		if(null == a) return (null == b) ? 0 : -1;
+		if(null == b) return 1;
+		
+		return ((Comparable<Object>) a).compareTo(b);
+	}
+	
+	// Reads single lines of <data>.txt by real index, decompressing
+	// each needed block only once
+	private class DataLineReader implements AutoCloseable {
+		
+		private DatabaseMetadata dbMetadata;
+		
+		// Every line (not compressed), or the block directory, and
+		// the file it was read from (null if missing)
+		private ArrayList<String> lines;
+		private ArrayList<BlockDataFile.BlockInfo> directory;
+		private RandomAccessFile raf;
+		private HashMap<BlockDataFile.BlockInfo, ArrayList<String>> blockLines = 
+				new HashMap<BlockDataFile.BlockInfo, ArrayList<String>>();
+		
+		// Number of entries
+		int size = 0;
+		
+		DataLineReader(DatabaseMetadata dbMetadata) throws IOException {
+			
+			this.dbMetadata = dbMetadata;
+			
+			if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) {
+				lines = readDataLinesOrEmpty(dbMetadata);
+				if(null == lines) return;
+				
+				removeEmptyLines(lines);
+				size = lines.size();
+				return;
+			}
+			
+			raf = BlockDataFile.openFile(dbFilePath);
+			directory = (null == raf) ? 
+					new ArrayList<BlockDataFile.BlockInfo>() : BlockDataFile.readDirectory(raf);
+			if(!directory.isEmpty()) {
+				BlockDataFile.BlockInfo last = directory.get(directory.size() - 1);
+				size = last.firstRow + last.nRows;
+			}
+		}
+		
+		String get(int index) throws IOException {
+			
+			if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) return lines.get(index);
+			
+			BlockDataFile.BlockInfo block = BlockDataFile.findBlock(directory, index);
+			if(null == block) throw new IndexOutOfBoundsException(index);
+			
+			ArrayList<String> blockStrArr = blockLines.get(block);
+			if(null == blockStrArr) {
+				blockStrArr = BlockDataFile.readBlock(raf, block);
+				blockLines.put(block, blockStrArr);
+			}
+			
+			return blockStrArr.get(index - block.firstRow);
+		}
+		
+		// Reports the blocks read/not read (see getLastScannedBlockCount())
+		void countBlocks() {
+			if(null == directory) return;
+			
+			lastScannedBlockCount = blockLines.size();
+			lastSkippedBlockCount = directory.size() - blockLines.size();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(null != raf) raf.close();
+		}
+	}
+	
+	//###################################################//
+	//################### CHANGE FEED ###################//
+	//###################################################//
+	
+	// Registers a listener notified of every change committed
+	// through this DatabaseMS, in sequence order
+	public void addChangeListener(ChangeListener listener) {
+		changeListeners.add(listener);
+	}
+	
+	public void removeChangeListener(ChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+	
+	// Returns the sequence number of the last committed change
+	public long getLastSequence() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		return (null == dbMetadata) ? 0 : dbMetadata.lastSequence;
+	}
+	
+	// Turns the change log (<data>.txt.changes) on/off.
+	// While on, every committed change is appended to it, 
+	// so that getChangesSince() can resume after a restart
+	public void setChangeLog(boolean enabled) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return;
+			
+			dbMetadata.changeLog = enabled;
+			commit(dbMetadata, null);
+		}
+	}
+	
+	// Returns every logged change with a sequence number
+	// greater than "sequence", in order.
+	// Changes committed while the change log was off are missing.
+	public ArrayList<ChangeEvent> getChangesSince(long sequence) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		ArrayList<ChangeEvent> changes = new ArrayList<ChangeEvent>();
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return changes;
+		
+		// Nothing was ever logged
+		if(!Files.exists(Path.of(getChangeLogFilePath()))) return changes;
+		
+		try(BufferedReader reader = Files.newBufferedReader(Paths.get(getChangeLogFilePath()))) {
+			
+			// Three lines per change
+			String header;
+			while(null != (header = reader.readLine())) {
+				String before = reader.readLine();
+				String after = reader.readLine();
+				
+				ChangeEvent change = parseChangeEventFromStr(header, before, after, dbMetadata);
+				if(null == change) {
+					lastOperationStatus = INVALIDDATAFORMAT;
+					break;
+				}
+				
+				// A commit that didn't complete may have logged changes,
+				// which the next commit logs again with the same numbers
+				while(!changes.isEmpty() && 
+					changes.get(changes.size() - 1).sequence >= change.sequence) {
+					changes.remove(changes.size() - 1);
+				}
+				
+				if(change.sequence > sequence) changes.add(change);
+			}
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+		}
+		
+		// Logged, but not committed (yet)
+		changes.removeIf(change -> change.sequence > dbMetadata.lastSequence);
+		
+		return changes;
+	}
+	
+	// Parses the before/after entry of a change event, only if
+	// someone will receive the event (returns null otherwise)
+	private AbstractArray parseEntryForChange(String iStr, DatabaseMetadata dbMetadata) {
+		
+		if(!dbMetadata.changeLog && changeListeners.isEmpty()) return null;
+		
+		return parseEntryFromStr(iStr, dbMetadata);
+	}
+	
+	// Appends numbered changes to the change log, if it is on.
+	// Called by commits under their lock, before the metadata 
+	// holding the new sequence number is stored: a change is 
+	// never counted without being logged.
+	// Returns false if the log couldn't be written
+	private boolean appendChangeLog(DatabaseMetadata dbMetadata, ArrayList<ChangeEvent> changes) {
+		
+		if(!dbMetadata.changeLog || changes.isEmpty()) return true;
+		
+		StringBuffer logBuffer = new StringBuffer();
+		for(ChangeEvent change : changes) {
+			for(String line : unparseChangeEventToStrArr(change, dbMetadata)) {
+				logBuffer.append(line + "\n");
+			}
+		}
+		
+		try {
+			Files.writeString(
+					Paths.get(getChangeLogFilePath()), 
+					logBuffer.toString(), 
+					StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEWRITINGERROR;
+			return false;
+		}
+		
+		return true;
+	}
+	
+	// Notifies the listeners of committed changes
+	private void notifyChanges(ArrayList<ChangeEvent> changes) {
+		
+		for(ChangeEvent change : changes) {
+			for(ChangeListener listener : changeListeners) {
+				listener.onChange(change);
+			}
+		}
+	}
+	
+	// Path of the change log, next to <data>.txt
+	private String getChangeLogFilePath() {
+		return dbFilePath + ".changes";
+	}
+	
+	//###################################################//
+	//#################### SNAPSHOTS ####################//
+	//###################################################//
+	
+	// Opens a read-only snapshot of the last committed version.
+	// Long scans should read from a snapshot: they see a consistent
+	// table for as long as the snapshot is open, while commits go on.
+	// Returns null if the snapshot couldn't be created.
+	public TableSnapshot openSnapshot() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		SnapshotRegistry registry = SnapshotRegistry.of(dbFilePath);
+		String[] extraFilePaths = new String[] {getDictionaryFilePath()};
+		
+		try {
+			SnapshotRegistry.SnapshotFiles files = 
+					registry.acquire(dbFilePath, metaFilePath, extraFilePaths);
+			
+			return new TableSnapshot(registry, files, metaFilePath, extraFilePaths);
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+			return null;
+		}
+	}
+	
+	//###################################################//
+	//################## STARTUP IMAGE ##################//
+	//###################################################//
+	
+	// The startup image (<data>.txt.image) holds the parsed entries 
+	// of the table, see TableImage. While it matches <data>.txt,
+	// <metadata>.txt and its dictionaries, getAbstractEntry() and 
+	// getAllAbstractEntries() read it instead of parsing them.
+	// Any commit makes it out of date, until it is written again.
+	
+	// Writes the startup image of the last committed version.
+	// It is read from a snapshot, so commits go on meanwhile.
+	public void writeImage() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		// Taken before the snapshot: any later commit is newer
+		long writtenAt = System.currentTimeMillis();
+		
+		try(TableSnapshot snapshot = openSnapshot()) {
+			if(null == snapshot) return;
+			
+			// The snapshot links have the size, modification time
+			// and content of the files they link, stamp them instead
+			DatabaseMS<Object> reader = new DatabaseMS<Object>(
+					snapshot.getFiles().dbFilePath, snapshot.getFiles().metaFilePath);
+			String[] sourcePaths = reader.getImageSourcePaths();
+			
+			TableImage.FileStamp[] stamps = new TableImage.FileStamp[sourcePaths.length];
+			
+			try {
+				for(int f=0; f<sourcePaths.length; f++) {
+					stamps[f] = TableImage.stampFile(sourcePaths[f], true);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				lastOperationStatus = FILEREADINGERROR;
+				return;
+			}
+			
+			DatabaseMetadata dbMetadata = reader.loadMetadata();
+			if(null == dbMetadata) {
+				lastOperationStatus = reader.getLastOperationStatus();
+				return;
+			}
+			
+			try(TableImage.Writer writer = 
+					new TableImage.Writer(getImageFilePath(), writtenAt, stamps, dbMetadata.types)) {
+				
+				// Stream the entries, a missing <data>.txt is empty
+				if(0 <= stamps[0].size) {
+					try(BufferedReader lineReader = reader.openDataReader(dbMetadata)) {
+						
+						String line;
+						while(null != (line = lineReader.readLine())) {
+							
+							// Empty lines aren't entries
+							if(0 >= line.length()) continue;
+							
+							AbstractArray entry = reader.parseEntryFromStr(line, dbMetadata);
+							if(null == entry) {
+								lastOperationStatus = INVALIDDATAFORMAT;
+								return;
+							}
+							
+							writer.add(entry);
+						}
+					}
+				}
+				
+				writer.finish();
+				
+			} catch (IOException e) {
+				e.printStackTrace();
+				lastOperationStatus = FILEWRITINGERROR;
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+			}
+		}
+	}
+	
+	// Maps the startup image, writing it first if it is missing 
+	// or out of date. Close the image once done.
+	// Returns null if it couldn't be written
+	public TableImage openImage() {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		TableImage image = openCurrentImage();
+		if(null != image) return image;
+		
+		writeImage();
+		if(OPERATIONSUCCESS != lastOperationStatus) return null;
+		
+		image = openCurrentImage();
+		if(null == image) lastOperationStatus = FILEREADINGERROR;
+		
+		return image;
+	}
+	
+	// Maps the startup image only if it matches the current files,
+	// never writing it (i.e.: for read-only users). Close the image
+	// once done. Returns null otherwise
+	public TableImage openCurrentImage() {
+		
+		if(!Files.exists(Path.of(getImageFilePath()))) return null;
+		
+		try {
+			return TableImage.open(getImageFilePath(), getImageSourcePaths());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private String getImageFilePath() {
+		return dbFilePath + ".image";
+	}
+	
+	// Files the startup image is made from (<data>.txt first)
+	private String[] getImageSourcePaths() {
+		return new String[] {dbFilePath, metaFilePath, getDictionaryFilePath()};
+	}
+	
+	//###################################################//
+	//############### BULK IMPORT/EXPORT ################//
+	//###################################################//
+	
+	// Appends every entry of the file at "srcPath" to the database.
+	// The source is streamed and validated in batches of BULKBATCHSIZE
+	// entries, so memory stays bounded, and appended in a single sequential
+	// pass to a copy of <data>.txt, committed once at the end.
+	// If a batch holds an invalid entry the import stops there, and only 
+	// the batches already written are kept (and counted in the metadata).
+	// Other writers, and new snapshots, wait for the import to complete.
+	// Returns the number of imported entries
+	public int bulkImport(String srcPath, int format) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		
+		synchronized(writeLock()) {
+			lastBulkRowCount = 0;
+			lastBulkRowsPerSecond = 0;
+			
+			// The metadata is needed first, to validate the entries
+			DatabaseMetadata dbMetadata = loadMetadata();
+			if(null == dbMetadata) return 0;
+			
+			long startTime = System.nanoTime();
+			ArrayList<AbstractArray> batch = new ArrayList<AbstractArray>(BULKBATCHSIZE);
+			
+			// Never append in place, open snapshots may share the file
+			String tmpFilePath;
+			try {
+				tmpFilePath = SnapshotRegistry.createTempFile(dbFilePath);
+			} catch (IOException e) {
+				e.printStackTrace();
+				lastOperationStatus = FILEWRITINGERROR;
+				return 0;
+			}
+			
+			// Whatever happens (even an Error), the copy is either
+			// committed or deleted
+			try {
+				boolean ioError = false;
+				
+				try(Writer writer = openDataAppender(dbMetadata, copyDataFile(tmpFilePath))) {
+					
+					boolean valid = true;
+					
+					if(BULK_CSV == format) {
+						try(BufferedReader reader = Files.newBufferedReader(Paths.get(srcPath))) {
+							
+							String line;
+							while(valid && null != (line = reader.readLine())) {
+								
+								// The last value of a CSV line may not
+								// be followed by a separator
+								if(!line.trim().endsWith(",")) line = line + ",";
+								
+								AbstractArray entry = parseEntryFromStr(line, dbMetadata, false);
+								if(null == entry) continue;
+								
+								// Values past the last field would be dropped
+								// when parsing, the row is as invalid as a
+								// short one (see validateAbstractArray())
+								if(countValuesInStr(line) != dbMetadata.nElements) {
+									lastOperationStatus = INVALIDDATAFORMAT;
+									valid = false;
+									break;
+								}
+								
+								valid = appendBulkEntry(entry, batch, writer, dbMetadata, startTime);
+							}
+						}
+					} else if(BULK_BINARY == format) {
+						try(DataInputStream in = new DataInputStream(
+								new BufferedInputStream(Files.newInputStream(Paths.get(srcPath))))) {
+							
+							// The binary header must match the metadata
+							int[] types = BinaryRowCodec.readHeader(in, dbMetadata.nElements);
+							if(!Arrays.equals(types, dbMetadata.types)) {
+								lastOperationStatus = INVALIDMETADATAFORMAT;
+								valid = false;
+							}
+							
+							AbstractArray entry;
+							while(valid && null != (entry = BinaryRowCodec.readRow(in, types))) {
+								valid = appendBulkEntry(entry, batch, writer, dbMetadata, startTime);
+							}
+						}
+					} else {
+						lastOperationStatus = INVALIDDATAFORMAT;
+						valid = false;
+					}
+					
+					// Write the last (incomplete) batch
+					if(valid) writeBulkBatch(batch, writer, dbMetadata, startTime);
+					
+				} catch (IOException e) {
+					e.printStackTrace();
+					lastOperationStatus = FILEREADINGERROR;
+					ioError = true;
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					// Unparseable value in the source file
+					lastOperationStatus = INVALIDDATAFORMAT;
+				}
+				
+				// Nothing to commit
+				if(ioError || 0 == lastBulkRowCount) {
+					if(ioError) lastBulkRowCount = 0;
+					return lastBulkRowCount;
+				}
+				
+				// Finally commit whatever was written
+				int status = lastOperationStatus;
+				int firstIndex = dbMetadata.nEntries;
+				
+				dbMetadata.nEntries += lastBulkRowCount;
+				
+				lastOperationStatus = OPERATIONSUCCESS;
+				commitDataFile(dbMetadata, tmpFilePath, firstIndex, lastBulkRowCount);
+				
+				// Imported entries go to the delta of a clustered table
+				if(OPERATIONSUCCESS == lastOperationStatus && 
+					dbMetadata.clusterColumnId >= 0 && 
+					isDeltaFull(dbMetadata, dbMetadata.nEntries)) {
+					mergeDelta();
+				}
+				
+				// Keep the import error, if there was one
+				if(OPERATIONSUCCESS != status) lastOperationStatus = status;
+				
+				return lastBulkRowCount;
+			} finally {
+				deleteTempFile(tmpFilePath);
+			}
+		}
+	}
+	
+	// Streams every entry of the database into the file at "dstPath",
+	// either as CSV (same layout as <data>.txt) or as binary.
+	// Returns the number of exported entries
+	public int bulkExport(String dstPath, int format) {
+		
+		// Set to success by default
+		lastOperationStatus = OPERATIONSUCCESS;
+		lastBulkRowCount = 0;
+		lastBulkRowsPerSecond = 0;
+		
+		if(BULK_CSV != format && BULK_BINARY != format) {
+			lastOperationStatus = INVALIDDATAFORMAT;
+			return 0;
+		}
+		
+		DatabaseMetadata dbMetadata = loadMetadata();
+		if(null == dbMetadata) return 0;
+		
+		long startTime = System.nanoTime();
+		
+		try(BufferedReader reader = openDataReader(dbMetadata);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(Paths.get(dstPath))))) {
+			
+			if(BULK_BINARY == format) BinaryRowCodec.writeHeader(out, dbMetadata.types);
+			
+			String line;
+			while(null != (line = reader.readLine())) {
+				
+				AbstractArray entry = parseEntryFromStr(line, dbMetadata);
+				if(null == entry) continue;
+				
+				if(BULK_CSV == format) {
+					out.write((unparseEntryToStr(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+				} else {
+					BinaryRowCodec.writeRow(out, entry);
+				}
+				
+				// Report progress once per batch
+				if(0 == (++lastBulkRowCount % BULKBATCHSIZE)) 
+					reportBulkProgress("Exported", startTime);
+			}
+			
+			if(BULK_BINARY == format) BinaryRowCodec.writeEnd(out);
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEWRITINGERROR;
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			lastOperationStatus = INVALIDDATAFORMAT;
+		}
+		
+		reportBulkProgress("Exported", startTime);
+		
+		return lastBulkRowCount;
+	}
+	
+	// Adds an entry to the current batch, and writes the batch once full
+	// Returns false if the batch was invalid
+	private boolean appendBulkEntry(AbstractArray entry, ArrayList<AbstractArray> batch,
+			Writer writer, DatabaseMetadata dbMetadata, long startTime) throws IOException {
+		
+		batch.add(entry);
+		
+		if(batch.size() < BULKBATCHSIZE) return true;
+		
+		return writeBulkBatch(batch, writer, dbMetadata, startTime);
+	}
+	
+	// Validates a whole batch and appends it to <data>.txt
+	// Nothing is written if any entry is invalid
+	private boolean writeBulkBatch(ArrayList<AbstractArray> batch, Writer writer,
+			DatabaseMetadata dbMetadata, long startTime) throws IOException {
+		
+		for(AbstractArray entry : batch) {
+			if(!validateAbstractArray(entry, dbMetadata)) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return false;
+			}
+		}
+		
+		for(AbstractArray entry : batch) {
+			writer.write(unparseEntryToStr(entry, dbMetadata) + "\n");
+		}
+		
+		lastBulkRowCount += batch.size();
+		batch.clear();
+		
+		reportBulkProgress("Imported", startTime);
+		
+		return true;
+	}
+	
+	// Copies <data>.txt to the (empty) "tmpFilePath", if it exists, 
+	// for a bulk import. Returns "tmpFilePath"
+	private String copyDataFile(String tmpFilePath) throws IOException {
+		
+		if(Files.exists(Path.of(dbFilePath))) {
+			Files.copy(Path.of(dbFilePath), Path.of(tmpFilePath), StandardCopyOption.REPLACE_EXISTING);
+		}
+		
+		return tmpFilePath;
+	}
+	
+	// Reads back the "nChanges" entries a bulk import appended to 
+	// the data file at "filePath" (<data>.txt or its replacement)
+	// from real index "firstIndex" on, as OP_ADD changes numbered 
+	// from "firstSequence" on. They are handed to "handler" once
+	// per batch, so that memory stays bounded.
+	// Returns false if the handler returned false, or on error
+	private boolean readBulkChanges(DatabaseMetadata dbMetadata, String filePath, int firstIndex, 
+			int nChanges, long firstSequence, Predicate<ArrayList<ChangeEvent>> handler) {
+		
+		long sequence = firstSequence - 1;
+		
+		ArrayList<ChangeEvent> changes = new ArrayList<ChangeEvent>(BULKBATCHSIZE);
+		
+		try(BufferedReader reader = openDataReader(dbMetadata, filePath)) {
+			
+			String line;
+			int index = 0;
+			while(null != (line = reader.readLine()) && index < firstIndex + nChanges) {
+				
+				// Empty lines aren't entries
+				if(0 >= line.length()) continue;
+				
+				// Only the imported entries are parsed
+				if(index >= firstIndex) {
+					AbstractArray entry = parseEntryFromStr(line, dbMetadata);
+					changes.add(new ChangeEvent(++sequence, ChangeEvent.OP_ADD, index, null, entry));
+					
+					if(changes.size() >= BULKBATCHSIZE) {
+						if(!handler.test(changes)) return false;
+						changes.clear();
+					}
+				}
+				
+				index++;
+			}
+			
+			return changes.isEmpty() || handler.test(changes);
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+			return false;
+		}
+	}
+	
+	// Updates the entries/second rate, and prints it if verbose
+	private void reportBulkProgress(String action, long startTime) {
+		
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		lastBulkRowsPerSecond = (seconds > 0) ? (lastBulkRowCount / seconds) : 0;
+		
+		if(verbose) {
+			System.out.print(action + " " + lastBulkRowCount + " entries (" 
+					+ (long) lastBulkRowsPerSecond + " entries/s)\n");
+		}
+	}
+	
+	//###################################################//
+	//############# (UN)PARSE FUNCTIONS #################//
+	//###################################################//
+	
+	// Parses entries from a deserialized String Array into an Abstract array
+	// Returns null (INVALIDDATAFORMAT) if any value is invalid
+	private ArrayList<AbstractArray> parseDataFromStrArr(ArrayList<String> strArr, DatabaseMetadata dbMetaRef) {
+		
+		// Instantiate the output 
+		ArrayList<AbstractArray> output = new ArrayList<AbstractArray>();
+
+		// String iteration
+		for(int s=0; s<strArr.size(); s++) {
+			
+			AbstractArray iAbsArr;
+			try {
+				iAbsArr = parseEntryFromStr(strArr.get(s), dbMetaRef);
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				// A value that can't be parsed back. Returning the 
+				// other entries would let a rewrite drop it
+				lastOperationStatus = INVALIDDATAFORMAT;
+				return null;
+			}
+			
+			// Avoid null/empty strings
+			if(null==iAbsArr) continue;
+			
+			// Push the parse entry to the output array
+			output.add(iAbsArr);
+		}
+		
+		return output;
+	}
+	
+	// Parses a single entry (one line of <data>.txt) into an AbstractArray
+	// Returns null for null/empty strings
+	private AbstractArray parseEntryFromStr(String iStr, DatabaseMetadata dbMetaRef) {
+		return parseEntryFromStr(iStr, dbMetaRef, true);
+	}
+	
+	// Same as above, "useDictionaries" set to false parses a line 
+	// with every value in plain text (i.e.: not from <data>.txt)
+	private AbstractArray parseEntryFromStr(String iStr, DatabaseMetadata dbMetaRef, boolean useDictionaries) {
+		
+		// Avoid null/empty strings
+		if(null==iStr) return null;
+		if(0 >= iStr.length()) return null;
+		
+		// Entries written with an older schema version are parsed
+		// with the fields of that version, then upgraded.
+		// Untagged plain text lines (i.e.: CSV) use the current one
+		int rowVersion = parseRowVersionFromStr(iStr, 
+				useDictionaries ? 0 : dbMetaRef.schemaVersion);
+		
+		if(rowVersion < 0 || rowVersion > dbMetaRef.schemaVersion) {
+			lastOperationStatus = INVALIDDATAFORMAT;
+			return null;
+		}
+		
+		int[] rowColumnIds = dbMetaRef.versionColumnIds.get(rowVersion);
+		
+		StringBuffer strBuffer = new StringBuffer();
+		char separator = ',';
+		
+		// Instantiate the current AbstractArray
+		AbstractArray iAbsArr = new AbstractArray(rowColumnIds.length);
+		
+		// Get the formats from the metadata
+		int[] format = iAbsArr.types;
+		for(int t=0; t<rowColumnIds.length; t++) {
+			format[t] = dbMetaRef.columnTypes.get(rowColumnIds[t]);
+		}
+		
+		// Char iteration
+		int valueIndex = 0;
+		for(int c=0; c<iStr.length(); c++) {
+			
+			char cchar = iStr.charAt(c);
+			
+			// Proceed to parse the current String
+			if((separator == cchar) && (valueIndex < rowColumnIds.length)) {
+				
+				// Trim the string to avoid Number 
+				// conversion anomalies
+				String trimmedBuffer = strBuffer.toString().trim();
+				
+				if(useDictionaries) {
+					iAbsArr.elements[valueIndex] = 
+							parseStoredValueFromStr(trimmedBuffer, rowColumnIds[valueIndex], dbMetaRef);
+				} else {
+					iAbsArr.elements[valueIndex] = 
+							parseValueFromStr(format[valueIndex], trimmedBuffer);
+				}
+				
+				strBuffer.delete(0, strBuffer.length()); // Reset buffer
+				valueIndex++; // go to next attribute
+			} else {
+				strBuffer.append(cchar); // Update buffer
+			}
+		}
+		
+		if(rowVersion != dbMetaRef.schemaVersion) {
+			iAbsArr = upgradeEntry(iAbsArr, rowColumnIds, dbMetaRef);
+		}
+		
+		return iAbsArr;
+	}
+	
+	// Returns the amount of values of a line (separators, since
+	// every value is followed by one)
+	private int countValuesInStr(String iStr) {
+		
+		int nValues = 0;
+		for(int c=0; c<iStr.length(); c++) {
+			if(',' == iStr.charAt(c)) nValues++;
+		}
+		
+		return nValues;
+	}
+	
+	// Returns the schema version of a line, written as @<version>
+	// after its last separator, or "untaggedVersion" if it has none
+	private int parseRowVersionFromStr(String iStr, int untaggedVersion) {
+		
+		String tail = iStr.substring(iStr.lastIndexOf(',') + 1).trim();
+		
+		if(0 >= tail.length() || '@' != tail.charAt(0)) return untaggedVersion;
+		
+		try {
+			return Integer.parseInt(tail.substring(1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	// Converts an entry parsed with the fields "rowColumnIds" to the 
+	// current fields. Dropped fields are left out, added fields get 
+	// their default value
+	private AbstractArray upgradeEntry(AbstractArray rowAbsArr, int[] rowColumnIds, DatabaseMetadata dbMetaRef) {
+		
+		AbstractArray iAbsArr = new AbstractArray(dbMetaRef.nElements);
+		System.arraycopy(dbMetaRef.types, 0, iAbsArr.types, 0, dbMetaRef.nElements);
+		
+		for(int c=0; c<dbMetaRef.nElements; c++) {
+			
+			int columnId = dbMetaRef.columnIds[c];
+			iAbsArr.elements[c] = dbMetaRef.columnDefaults.get(columnId);
+			
+			for(int r=0; r<rowColumnIds.length; r++) {
+				if(columnId == rowColumnIds[r]) {
+					iAbsArr.elements[c] = rowAbsArr.elements[r];
+					break;
+				}
+			}
+		}
+		
+		return iAbsArr;
+	}
+	
+	// Parses a single (trimmed) value of <data>.txt, of field "columnId"
+	// Dictionary encoded values are stored as their code. A code 
+	// missing from the dictionary is as invalid as a malformed number
+	private Object parseStoredValueFromStr(String trimmedBuffer, int columnId, DatabaseMetadata dbMetaRef) {
+		
+		StringDictionary dictionary = dbMetaRef.dictionaries.get(columnId);
+		
+		if(null != dictionary) {
+			// Shared String instance, no copy
+			String value = dictionary.getValue(Integer.parseInt(trimmedBuffer));
+			if(null == value) {
+				lastOperationStatus = INVALIDDATAFORMAT;
+				throw new NumberFormatException("Unknown dictionary code: " + trimmedBuffer);
+			}
+			return value;
+		}
+		
+		return parseValueFromStr(dbMetaRef.columnTypes.get(columnId), trimmedBuffer);
+	}
+	
+	// Parses a line of <data>.txt straight into a T, through
+	// the bound RecordCodec (no AbstractArray involved)
+	// Returns null if it couldn't be built
+	private T parseTypedFromStr(String iStr, DatabaseMetadata dbMetaRef) {
+		
+		if(null == iStr) return null;
+		
+		// Entries of older schema versions need an upgrade first
+		if(parseRowVersionFromStr(iStr, 0) != dbMetaRef.schemaVersion) {
+			
+			AbstractArray iAbsArr = parseEntryFromStr(iStr, dbMetaRef);
+			if(null == iAbsArr) return null;
+			
+			Object builder = codec.newBuilder();
+			if(null == builder) return null;
+			
+			for(int e=0; e<iAbsArr.nElements; e++) {
+				if(!codec.setValue(builder, e, iAbsArr.elements[e])) return null;
+			}
+			
+			return codec.build(builder);
+		}
+		
+		// Each value is parsed straight to its field
+		StringDictionary[] dictionaries = new StringDictionary[dbMetaRef.nElements];
+		for(int c=0; c<dbMetaRef.nElements; c++) {
+			dictionaries[c] = dbMetaRef.dictionaries.get(dbMetaRef.columnIds[c]);
+		}
+		
+		RecordCodec.Values values = new RecordCodec.Values(dictionaries);
+		values.reset(iStr);
+		
+		return codec.decode(values);
+	}
+	
+	// Parses a single (trimmed) value from String into the respective type
+	// Returns null for unknown types
+	private Object parseValueFromStr(int type, String trimmedBuffer) {
+		
+		switch(type) {
+		case AbstractArray.ATR_INT: 
+			return Integer.parseInt(trimmedBuffer);
+		case AbstractArray.ATR_DBL: 
+			return Double.parseDouble(trimmedBuffer);
+		case AbstractArray.ATR_CHR: 
+			// Takes only the first char
+			return trimmedBuffer.charAt(0);
+		case AbstractArray.ATR_STR: 
+			// Only deep copy
+			return new String(trimmedBuffer);
+		case AbstractArray.ATR_FLT: 
+			return Float.parseFloat(trimmedBuffer);
+		case AbstractArray.ATR_BOL: 
+			return Boolean.parseBoolean(trimmedBuffer);
+		default:
+			return null;
+		}
+	}
+	
+	// Returns the (parsed) value of field "column" of a line of 
+	// <data>.txt, parsing the whole entry only if needed
+	private Object parseFieldFromStr(String iStr, int column, DatabaseMetadata dbMetaRef) {
+		
+		String rawValue = extractCurrentValueFromStr(iStr, column, dbMetaRef);
+		
+		if(null == rawValue) {
+			// Older schema version
+			AbstractArray entry = parseEntryFromStr(iStr, dbMetaRef);
+			return (null == entry) ? null : entry.elements[column];
+		}
+		
+		return parseStoredValueFromStr(rawValue, dbMetaRef.columnIds[column], dbMetaRef);
+	}
+	
+	// Same as extractValueFromStr(), but returns null if the line 
+	// wasn't written with the current schema version either
+	private String extractCurrentValueFromStr(String iStr, int column, DatabaseMetadata dbMetaRef) {
+		
+		if(null == iStr) return null;
+		if(parseRowVersionFromStr(iStr, 0) != dbMetaRef.schemaVersion) return null;
+		
+		return extractValueFromStr(iStr, column);
+	}
+	
+	// Returns the (trimmed) raw value at "column" of a line of <data>.txt,
+	// without parsing the rest of the entry
+	// Returns null if the line has less values
+	private String extractValueFromStr(String iStr, int column) {
+		
+		if(null == iStr) return null;
+		
+		int valueIndex = 0, valueStart = 0;
+		for(int c=0; c<iStr.length(); c++) {
+			if(',' == iStr.charAt(c)) {
+				if(column == valueIndex) {
+					return iStr.substring(valueStart, c).trim();
+				}
+				valueIndex++;
+				valueStart = c + 1;
+			}
+		}
+		
+		return null;
+	}
+	
+	// Converts an array of BankAccounts back to a String array
+	private ArrayList<String> unparseDataToStrArr(ArrayList<AbstractArray> objArr, DatabaseMetadata dbMetaRef) {
+		ArrayList<String> outArr = new ArrayList<String>();
+		
+		if(null == objArr) {
 			lastOperationStatus = INVALIDDATAFORMAT;
+			return null;
+		}
+		
+		// Entry Iteration
+		for(int i=0; i<objArr.size(); i++) {
+			
+			// Append strigified entry
+			outArr.add(unparseEntryToStr(objArr.get(i), dbMetaRef));
 		}
+		
+		return outArr;
 	}
 	
-	// Sets an AbstractArray "newObj" at real index "index"
-	public void setAbstractEntry(int index, AbstractArray newObj) {
-		
-		// Set to success by default
-		lastOperationStatus = OPERATIONSUCCESS;
+	// Converts a single AbstractArray back to a line of text, 
+	// with every value in plain text
+	private String unparseEntryToStr(AbstractArray iobj) {
+		return unparseEntryToStr(iobj, null);
+	}
+	
+	// Converts a single AbstractArray back to a line of <data>.txt
+	// Dictionary encoded values are replaced by their code, new values
+	// are added to the dictionaries of "dbMetaRef" (if non null)
+	private String unparseEntryToStr(AbstractArray iobj, DatabaseMetadata dbMetaRef) {
 		
-		// First, load the metadata 
-		DatabaseMetadata dbMetadata = parseMetadataFromStrArr(deserializeFile(this.metaFilePath));
+		StringBuffer strBuffer = new StringBuffer();
 		
-		// Check that the index is valid
-		if(index >= dbMetadata.nElements) {
-			lastOperationStatus = NONEXISTANTID;
-			return;
+		// Stringify values of the entry
+		for(int j=0; j<iobj.nElements; j++) {
+			if(null == iobj.elements[j]) continue;
+			
+			strBuffer.append(unparseValueToStr(iobj.elements[j], j, dbMetaRef) + ", ");
 		}
 		
-		// Check the correct format of "newObj"
-		boolean correctFormat = validateAbstractArray(newObj, dbMetadata);
-		if(!correctFormat) {
-			lastOperationStatus = INVALIDMETADATAFORMAT;
-			return;
+		// Tag the schema version, once it has changed
+		if(null != dbMetaRef && 0 != dbMetaRef.schemaVersion) {
+			strBuffer.append("@" + dbMetaRef.schemaVersion);
 		}
 		
-		// If everything is valid, proceed to load the actual data
-		ArrayList<AbstractArray> absArr = parseDataFromStrArr(deserializeFile(this.dbFilePath), dbMetadata);
+		return strBuffer.toString();
+	}
 	
-		// Modify the entry
-		absArr.set(index, newObj);
+	// Converts a T back to a line of <data>.txt, through the 
+	// bound RecordCodec (no AbstractArray involved)
+	// Returns null if any value is null
+	private String unparseTypedToStr(T obj, DatabaseMetadata dbMetaRef) {
 		
-		// Serialize the modified array metadata
-		serializeFile(metaFilePath, unparseMetadataToStrArr(dbMetadata));
-	
-		// Serialize the modified array data
-		serializeFile(dbFilePath, unparseDataToStrArr(absArr));
-	}
-
-	// Removes an AbstractArray at real index "index"
-	public void removeAbstractEntry(int index) {
+		if(null == obj) return null;
 		
-		// Set to success by default
-		lastOperationStatus = OPERATIONSUCCESS;		
-	
-		// First, load the metadata 
-		DatabaseMetadata dbMetadata = parseMetadataFromStrArr(deserializeFile(this.metaFilePath));
-				
-		// Check that the index is valid
-		if(index >= dbMetadata.nEntries) {
-			lastOperationStatus = NONEXISTANTID;
-			return;
-		}
+		StringBuffer strBuffer = new StringBuffer();
 		
-		// If everything is valid, proceed to load the actual data
-		ArrayList<AbstractArray> absArr = parseDataFromStrArr(deserializeFile(this.dbFilePath), dbMetadata);
+		for(int j=0; j<dbMetaRef.nElements; j++) {
+			Object value = codec.getValue(obj, j);
+			if(null == value) return null;
 			
-		// Modify the entry
-		absArr.remove(index);
+			strBuffer.append(unparseValueToStr(value, j, dbMetaRef) + ", ");
+		}
 		
-		// Update metadata
-		dbMetadata.nEntries--;
+		// Tag the schema version, once it has changed
+		if(0 != dbMetaRef.schemaVersion) {
+			strBuffer.append("@" + dbMetaRef.schemaVersion);
+		}
 		
-		// Serialize the modified array metadata
-		serializeFile(metaFilePath, unparseMetadataToStrArr(dbMetadata));
-	
-		// Serialize the modified array data
-		serializeFile(dbFilePath, unparseDataToStrArr(absArr));
+		return strBuffer.toString();
 	}
 	
-	//---------- SPECIFIC CORE OPERATIONS -------------//
-	// Manipulate specific classes stored by the       //
-	// specific database.  						       //
-	// Use the real a search criteria inherent to the  //
-	// entry (i.e.: "objectID", "username", etc).      //
-	// These need to be overriden in the child classes.//
-	//-------------------------------------------------//
-	
-	public T getData(int index) {return null;}
-	
-	public void addData(T newEntry) {}
-	
-	public void setData(int index, T newEntry) {}
-	
-	public void removeData(int index) {}
-	
-	//###################################################//
-	//############# (UN)PARSE FUNCTIONS #################//
-	//###################################################//
-	
-	// Parses entries from a deserialized String Array into an Abstract array
-	private ArrayList<AbstractArray> parseDataFromStrArr(ArrayList<String> strArr, DatabaseMetadata dbMetaRef) {
+	// Stringifies a single value at "column" of <data>.txt
+	// Dictionary encoded values are replaced by their code
+	private String unparseValueToStr(Object value, int column, DatabaseMetadata dbMetaRef) {
 		
-		// Instantiate the output 
-		ArrayList<AbstractArray> output = new ArrayList<AbstractArray>();
+		StringDictionary dictionary = 
+				(null == dbMetaRef) ? null : dbMetaRef.dictionaries.get(dbMetaRef.columnIds[column]);
 		
-		// Deep copy the types array from metadata
-		int[] typesCopy = new int[dbMetaRef.types.length];
-		System.arraycopy(
-				dbMetaRef.types, 
-				0, typesCopy, 
-				0, 
-				dbMetaRef.types.length);
+		if(null != dictionary) {
+			return Integer.toString(dictionary.getOrAddCode(value.toString()));
+		}
 		
-		StringBuffer strBuffer = new StringBuffer();
-		char separator = ',';
-
-		// String iteration
-		for(int s=0; s<strArr.size(); s++) {
-			
-			String iStr = strArr.get(s);
-
-			// Avoid null/empty strings
-			if(null==iStr) continue;
-			if(0 >= iStr.length()) continue;
+		return value.toString();
+	}
+	
+	// Parses a ChangeEvent from its three serialized lines
+	// Returns null if invalid
+	private ChangeEvent parseChangeEventFromStr(String header, String before, String after, 
+			DatabaseMetadata dbMetaRef) {
+		
+		if(null == header || null == before || null == after) return null;
+		
+		try {
+			long sequence = Long.parseLong(extractValueFromStr(header, 0));
+			String strOperation = extractValueFromStr(header, 1);
+			int index = Integer.parseInt(extractValueFromStr(header, 2));
 			
-			// Instantiate the current AbstractArray
-			AbstractArray iAbsArr = new AbstractArray(dbMetaRef.nElements);
+			int operation;
+			if(strOperation.contentEquals(ChangeEvent.STROP_ADD)) {
+				operation = ChangeEvent.OP_ADD;
+			} else if(strOperation.contentEquals(ChangeEvent.STROP_SET)) {
+				operation = ChangeEvent.OP_SET;
+			} else if(strOperation.contentEquals(ChangeEvent.STROP_REMOVE)) {
+				operation = ChangeEvent.OP_REMOVE;
+			} else if(strOperation.contentEquals(ChangeEvent.STROP_REORDER)) {
+				return new ChangeEvent(sequence, parseOrderFromStr(before));
+			} else {
+				return null;
+			}
 			
-			// Get the formats from the metadata
-			int[] format = dbMetaRef.types;
+			// Logged entries are in plain text
+			return new ChangeEvent(sequence, operation, index,
+					parseEntryFromStr(before, dbMetaRef, false),
+					parseEntryFromStr(after, dbMetaRef, false));
 			
-			// Char iteration
-			int valueIndex = 0;
-			for(int c=0; c<iStr.length(); c++) {
-				
-				char cchar = iStr.charAt(c);
-				
-				// Proceed to parse the current String
-				if((separator == cchar) && (valueIndex < dbMetaRef.nElements)) {
-					
-					// Trim the string to avoid Number 
-					// conversion anomalies
-					String trimmedBuffer = strBuffer.toString().trim();
-										
-					if(format.length < dbMetaRef.nElements) {
-						//Error
-						lastOperationStatus = INVALIDMETADATAFORMAT;
-					}
-					else {
-						// Check each single value type, and parse 
-						// from String into the respective type
-						switch(format[valueIndex]) {
-						case AbstractArray.ATR_INT: {
-							iAbsArr.elements[valueIndex] = 
-									Integer.parseInt(trimmedBuffer);
-						}
-							break;
-						case AbstractArray.ATR_DBL: {
-							iAbsArr.elements[valueIndex] =
-									Double.parseDouble(trimmedBuffer);
-						}
-							break;
-						case AbstractArray.ATR_CHR: {
-							iAbsArr.elements[valueIndex] =
-									// Takes only the first char
-									trimmedBuffer.charAt(0);
-						}
-							break;
-						case AbstractArray.ATR_STR: {
-							iAbsArr.elements[valueIndex] = 
-									// Only deep copy
-									new String(trimmedBuffer);
-						}
-							break;
-						case AbstractArray.ATR_FLT: {
-							iAbsArr.elements[valueIndex] = Float.parseFloat(trimmedBuffer);
-						}
-							break;
-						case AbstractArray.ATR_BOL: {						
-							iAbsArr.elements[valueIndex] = Boolean.parseBoolean(trimmedBuffer);
-						}
-							break;
-						default:
-							break;
-						}
-						
-						strBuffer.delete(0, strBuffer.length()); // Reset buffer
-						valueIndex++; // go to next attribute
-					}
-				} else {
-					strBuffer.append(cchar); // Update buffer
-				}
-			}
+		} catch (NumberFormatException | IndexOutOfBoundsException | NullPointerException e) {
+			return null;
+		}
+	}
+	
+	// Parses the order of an OP_REORDER change ("3, 0, 1, 2, ")
+	private int[] parseOrderFromStr(String iStr) {
+		
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		
+		int start = 0;
+		for(int c=0; c<iStr.length(); c++) {
+			if(',' != iStr.charAt(c)) continue;
 			
-			// Push the parse entry to the output array
-			output.add(iAbsArr);
+			order.add(Integer.parseInt(iStr.substring(start, c).trim()));
+			start = c + 1;
 		}
 		
-		return output;
+		int[] outArr = new int[order.size()];
+		for(int i=0; i<outArr.length; i++) {
+			outArr[i] = order.get(i);
+		}
+		
+		return outArr;
 	}
 	
-	// Converts an array of BankAccounts back to a String array
-	private ArrayList<String> unparseDataToStrArr(ArrayList<AbstractArray> objArr) {
+	// Converts a ChangeEvent to its three serialized lines
+	private ArrayList<String> unparseChangeEventToStrArr(ChangeEvent change, DatabaseMetadata dbMetaRef) {
+		
 		ArrayList<String> outArr = new ArrayList<String>();
 		
-		if(null == objArr) {
-			lastOperationStatus = INVALIDDATAFORMAT;
-			return null;
+		String strOperation;
+		switch(change.operation) {
+		case ChangeEvent.OP_ADD:
+			strOperation = ChangeEvent.STROP_ADD;
+			break;
+		case ChangeEvent.OP_SET:
+			strOperation = ChangeEvent.STROP_SET;
+			break;
+		case ChangeEvent.OP_REORDER:
+			strOperation = ChangeEvent.STROP_REORDER;
+			break;
+		default:
+			strOperation = ChangeEvent.STROP_REMOVE;
+			break;
 		}
 		
-		// Entry Iteration
-		for(int i=0; i<objArr.size(); i++) {
-			AbstractArray iobj = objArr.get(i);
-			
-			StringBuffer strBuffer = new StringBuffer();
-			
-			// Stringify values of the entry
-			for(int j=0; j<iobj.nElements; j++) {
-				if(null != iobj.elements[j])
-					strBuffer.append(
-							iobj.elements[j].toString() + ", ");
+		outArr.add(change.sequence + ", " + strOperation + ", " + change.index + ", ");
+		
+		if(ChangeEvent.OP_REORDER == change.operation) {
+			StringBuffer orderBuffer = new StringBuffer();
+			for(int previousIndex : change.order) {
+				orderBuffer.append(previousIndex + ", ");
 			}
 			
-			// Append strigified entry
-			outArr.add(strBuffer.toString());
-
-			// Reset Buffer
-			if(!strBuffer.isEmpty()) 
-				strBuffer.delete(0, strBuffer.length());
+			outArr.add(orderBuffer.toString());
+			outArr.add("");
+			return outArr;
 		}
 		
+		// Logged entries are always tagged with their schema version
+		String versionTag = "@" + dbMetaRef.schemaVersion;
+		
+		outArr.add((null == change.before) ? "" : unparseEntryToStr(change.before) + versionTag);
+		outArr.add((null == change.after) ? "" : unparseEntryToStr(change.after) + versionTag);
+		
 		return outArr;
 	}
 	
@@ -492,60 +2455,322 @@ public class DatabaseMS<T> {
 			return null;
 		}
 		
-		// Represents the current type being parsed
-		int typeCounter = 0;
+		// Represents the current type being parsed
+		int typeCounter = 0;
+		
+		// Make sure to initialize the types array in metadata
+		dbMeta.types = new int[dbMeta.nElements];
+		
+		// Get types from the third line
+		for(int i=0; i<thirdLine.length(); i++) {
+			if(',' == thirdLine.charAt(i)) {
+				
+				String bufferContent = strBuffer.toString().trim();
+				
+				if(bufferContent.contentEquals(AbstractArray.STRATR_INT)) 
+				{
+					dbMeta.types[typeCounter] = AbstractArray.ATR_INT;
+				} 
+				else if(bufferContent.contentEquals(AbstractArray.STRATR_STR))
+				{
+					dbMeta.types[typeCounter] = AbstractArray.ATR_STR;					
+				}
+				else if(bufferContent.contentEquals(AbstractArray.STRATR_DBL))
+				{
+					dbMeta.types[typeCounter] = AbstractArray.ATR_DBL;
+				}
+				else if(bufferContent.contentEquals(AbstractArray.STRATR_FLT))
+				{
+					dbMeta.types[typeCounter] = AbstractArray.ATR_FLT;
+				}
+				else if(bufferContent.contentEquals(AbstractArray.STRATR_CHR))
+				{
+					dbMeta.types[typeCounter] = AbstractArray.ATR_CHR;
+				}
+				else if(bufferContent.contentEquals(AbstractArray.STRATR_BOL))
+				{
+					dbMeta.types[typeCounter] = AbstractArray.ATR_BOL;
+				}
+				else {
+					// INVALID TYPE CODE, HANDLE THIS
+				}
+				
+				// Go to next element's type
+				typeCounter++;
+				
+				// Clear the buffer				
+				if(!strBuffer.isEmpty())
+					strBuffer.delete(0, strBuffer.length()); 
+				
+			} else {
+				// Update buffer
+				strBuffer.append(thirdLine.charAt(i));
+			}
+		}
+		
+		// The fourth line (options) is optional
+		if(strArr.size() > 3 && null != strArr.get(3)) {
+			
+			// reset these for the next line
+			if(!strBuffer.isEmpty())
+				strBuffer.delete(0, strBuffer.length());
+			
+			String fourthLine = strArr.get(3);
+			
+			// Get options from the fourth line
+			for(int i=0; i<fourthLine.length(); i++) {
+				if(',' == fourthLine.charAt(i)) {
+					
+					if(!parseMetadataOption(dbMeta, strBuffer.toString().trim())) {
+						lastOperationStatus = INVALIDMETADATAFORMAT;
+						return null;
+					}
+					
+					// Clear the buffer				
+					if(!strBuffer.isEmpty())
+						strBuffer.delete(0, strBuffer.length()); 
+					
+				} else {
+					// Update buffer
+					strBuffer.append(fourthLine.charAt(i));
+				}
+			}
+		}
+		
+		// Every field is an original one (ID = index) 
+		// until the schema history says otherwise
+		dbMeta.columnIds = new int[dbMeta.nElements];
+		for(int c=0; c<dbMeta.nElements; c++) {
+			dbMeta.columnIds[c] = c;
+			dbMeta.columnTypes.put(c, dbMeta.types[c]);
+		}
+		dbMeta.nextColumnId = dbMeta.nElements;
+		
+		// The next lines (schema history) are only there
+		// once the schema has changed
+		if(0 == dbMeta.schemaVersion) {
+			dbMeta.versionColumnIds.add(dbMeta.columnIds);
+		} else if(!parseSchemaHistoryFromStrArr(strArr, dbMeta)) {
+			lastOperationStatus = INVALIDMETADATAFORMAT;
+			return null;
+		}
+		
+		// Only ATR_STR fields can be dictionary encoded
+		for(int columnId : dbMeta.dictionaries.keySet()) {
+			Integer type = dbMeta.columnTypes.get(columnId);
+			
+			if(null == type || AbstractArray.ATR_STR != type) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return null;
+			}
+		}
+		
+		// The clustering key must be a current field
+		if(dbMeta.clusterColumnId >= 0 && getClusterColumn(dbMeta) < 0) {
+			lastOperationStatus = INVALIDMETADATAFORMAT;
+			return null;
+		}
+		
+		// Only ATR_STR/ATR_INT fields can have Bloom filters
+		for(int columnId : dbMeta.bloomFilters) {
+			Integer type = dbMeta.columnTypes.get(columnId);
+			
+			if(null == type || 
+				(AbstractArray.ATR_STR != type && AbstractArray.ATR_INT != type)) {
+				lastOperationStatus = INVALIDMETADATAFORMAT;
+				return null;
+			}
+		}
+		
+		return dbMeta;
+	}
+	
+	// Parses the schema history (5th+ lines of <metadata>.txt) into "dbMeta"
+	// Returns false if it is invalid, or doesn't match the current fields
+	private boolean parseSchemaHistoryFromStrArr(ArrayList<String> strArr, DatabaseMetadata dbMeta) {
+		
+		dbMeta.columnTypes.clear();
+		
+		try {
+			for(int l=4; l<strArr.size(); l++) {
+				
+				ArrayList<String> values = splitValuesFromStr(strArr.get(l));
+				if(values.isEmpty()) continue;
+				
+				String key = values.get(0);
+				
+				if(key.contentEquals(DatabaseMetadata.SCHEMA_COLUMN)) 
+				{
+					// COLUMN, <column ID>, <type>, <default value>,
+					int columnId = Integer.parseInt(values.get(1));
+					int type = parseTypeFromStr(values.get(2));
+					if(type < 0) return false;
+					
+					dbMeta.columnTypes.put(columnId, type);
+					if(values.size() > 3 && 0 < values.get(3).length()) {
+						dbMeta.columnDefaults.put(columnId, parseValueFromStr(type, values.get(3)));
+					}
+					
+					dbMeta.nextColumnId = Math.max(dbMeta.nextColumnId, columnId + 1);
+				} 
+				else if(key.contentEquals(DatabaseMetadata.SCHEMA_VERSION)) 
+				{
+					// VERSION, <version>, <[column IDs]>,
+					// Versions are written in order
+					if(Integer.parseInt(values.get(1)) != dbMeta.versionColumnIds.size()) return false;
+					
+					int[] columnIds = new int[values.size() - 2];
+					for(int c=0; c<columnIds.length; c++) {
+						columnIds[c] = Integer.parseInt(values.get(c + 2));
+					}
+					
+					dbMeta.versionColumnIds.add(columnIds);
+				}
+			}
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return false;
+		}
+		
+		// The last version has to be the current one
+		if(dbMeta.versionColumnIds.size() != dbMeta.schemaVersion + 1) return false;
+		
+		int[] currentIds = dbMeta.versionColumnIds.get(dbMeta.schemaVersion);
+		if(currentIds.length != dbMeta.nElements) return false;
+		
+		for(int c=0; c<currentIds.length; c++) {
+			Integer type = dbMeta.columnTypes.get(currentIds[c]);
+			if(null == type || type != dbMeta.types[c]) return false;
+		}
+		
+		// Every version must only use known fields
+		for(int[] columnIds : dbMeta.versionColumnIds) {
+			for(int columnId : columnIds) {
+				if(!dbMeta.columnTypes.containsKey(columnId)) return false;
+			}
+		}
+		
+		dbMeta.columnIds = currentIds;
+		
+		return true;
+	}
+	
+	// Splits a line on its separators, returning the trimmed
+	// values (whatever follows the last separator is ignored)
+	private ArrayList<String> splitValuesFromStr(String iStr) {
+		
+		ArrayList<String> values = new ArrayList<String>();
+		if(null == iStr) return values;
+		
+		int valueStart = 0;
+		for(int c=0; c<iStr.length(); c++) {
+			if(',' == iStr.charAt(c)) {
+				values.add(iStr.substring(valueStart, c).trim());
+				valueStart = c + 1;
+			}
+		}
+		
+		return values;
+	}
+	
+	// Returns the type code of a type String constant, or -1
+	private int parseTypeFromStr(String strType) {
+		
+		if(strType.contentEquals(AbstractArray.STRATR_INT)) return AbstractArray.ATR_INT;
+		if(strType.contentEquals(AbstractArray.STRATR_STR)) return AbstractArray.ATR_STR;
+		if(strType.contentEquals(AbstractArray.STRATR_DBL)) return AbstractArray.ATR_DBL;
+		if(strType.contentEquals(AbstractArray.STRATR_FLT)) return AbstractArray.ATR_FLT;
+		if(strType.contentEquals(AbstractArray.STRATR_CHR)) return AbstractArray.ATR_CHR;
+		if(strType.contentEquals(AbstractArray.STRATR_BOL)) return AbstractArray.ATR_BOL;
+		return -1;
+	}
+	
+	// Returns the type String constant of a type code, or null
+	private String unparseTypeToStr(int type) {
+		
+		switch(type) {
+		case AbstractArray.ATR_INT:
+			return AbstractArray.STRATR_INT;
+		case AbstractArray.ATR_STR:
+			return AbstractArray.STRATR_STR;
+		case AbstractArray.ATR_DBL:
+			return AbstractArray.STRATR_DBL;
+		case AbstractArray.ATR_FLT:
+			return AbstractArray.STRATR_FLT;
+		case AbstractArray.ATR_CHR:
+			return AbstractArray.STRATR_CHR;
+		case AbstractArray.ATR_BOL:
+			return AbstractArray.STRATR_BOL;
+		default:
+			return null;
+		}
+	}
+	
+	// Parses a single KEY=VALUE option into "dbMeta"
+	// Unknown keys are ignored, returns false on invalid values
+	private boolean parseMetadataOption(DatabaseMetadata dbMeta, String option) {
+		
+		int equalsIndex = option.indexOf('=');
+		if(equalsIndex <= 0) return false;
 		
-		// Make sure to initialize the types array in metadata
-		dbMeta.types = new int[dbMeta.nElements];
+		String key = option.substring(0, equalsIndex).trim();
+		String value = option.substring(equalsIndex + 1).trim();
 		
-		// Get types from the third line
-		for(int i=0; i<thirdLine.length(); i++) {
-			if(',' == thirdLine.charAt(i)) {
-				
-				String bufferContent = strBuffer.toString().trim();
-				
-				if(bufferContent.contentEquals(AbstractArray.STRATR_INT)) 
-				{
-					dbMeta.types[typeCounter] = AbstractArray.ATR_INT;
-				} 
-				else if(bufferContent.contentEquals(AbstractArray.STRATR_STR))
-				{
-					dbMeta.types[typeCounter] = AbstractArray.ATR_STR;					
-				}
-				else if(bufferContent.contentEquals(AbstractArray.STRATR_DBL))
-				{
-					dbMeta.types[typeCounter] = AbstractArray.ATR_DBL;
-				}
-				else if(bufferContent.contentEquals(AbstractArray.STRATR_FLT))
-				{
-					dbMeta.types[typeCounter] = AbstractArray.ATR_FLT;
-				}
-				else if(bufferContent.contentEquals(AbstractArray.STRATR_CHR))
-				{
-					dbMeta.types[typeCounter] = AbstractArray.ATR_CHR;
-				}
-				else if(bufferContent.contentEquals(AbstractArray.STRATR_BOL))
-				{
-					dbMeta.types[typeCounter] = AbstractArray.ATR_BOL;
-				}
-				else {
-					// INVALID TYPE CODE, HANDLE THIS
+		try {
+			if(key.contentEquals(DatabaseMetadata.OPT_COMPRESSION)) 
+			{
+				if(value.contentEquals(DatabaseMetadata.STRCOMPRESSION_NONE)) {
+					dbMeta.compression = DatabaseMetadata.COMPRESSION_NONE;
+				} else if(value.contentEquals(DatabaseMetadata.STRCOMPRESSION_DEFLATE)) {
+					dbMeta.compression = DatabaseMetadata.COMPRESSION_DEFLATE;
+				} else {
+					return false;
 				}
-				
-				// Go to next element's type
-				typeCounter++;
-				
-				// Clear the buffer				
-				if(!strBuffer.isEmpty())
-					strBuffer.delete(0, strBuffer.length()); 
-				
-			} else {
-				// Update buffer
-				strBuffer.append(thirdLine.charAt(i));
 			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_BLOCKSIZE)) 
+			{
+				dbMeta.blockSize = Integer.parseInt(value);
+				if(dbMeta.blockSize <= 0) return false;
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_DICTIONARY)) 
+			{
+				// Filled by loadMetadata(), checked once
+				// every field is known
+				int columnId = Integer.parseInt(value);
+				dbMeta.dictionaries.put(columnId, new StringDictionary());
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_SEQUENCE)) 
+			{
+				dbMeta.lastSequence = Long.parseLong(value);
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_BLOOMFILTER)) 
+			{
+				// Checked once every field is known
+				dbMeta.bloomFilters.add(Integer.parseInt(value));
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_CHANGELOG)) 
+			{
+				dbMeta.changeLog = value.contentEquals(DatabaseMetadata.STROPTION_ON);
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_SCHEMA)) 
+			{
+				dbMeta.schemaVersion = Integer.parseInt(value);
+				if(dbMeta.schemaVersion < 0) return false;
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_CLUSTER)) 
+			{
+				// Checked once every field is known
+				dbMeta.clusterColumnId = Integer.parseInt(value);
+			}
+			else if(key.contentEquals(DatabaseMetadata.OPT_SORTED)) 
+			{
+				dbMeta.sortedEntries = Integer.parseInt(value);
+				if(dbMeta.sortedEntries < 0) return false;
+			}
+		} catch (NumberFormatException e) {
+			return false;
 		}
 		
-		return dbMeta;
+		return true;
 	}
 	
 	// Converts a DatabaseMetadata object back to a String array
@@ -617,6 +2842,140 @@ public class DatabaseMS<T> {
 		}
 		outArr.add(thirdLine.toString());
 		
+		// Unparse fourth line (options), only the non-default ones
+		StringBuffer fourthLine = new StringBuffer();
+		
+		if(DatabaseMetadata.COMPRESSION_DEFLATE == metadata.compression) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_COMPRESSION + "=" + 
+					DatabaseMetadata.STRCOMPRESSION_DEFLATE + ", ");
+		}
+		if(DatabaseMetadata.DEFAULTBLOCKSIZE != metadata.blockSize) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_BLOCKSIZE + "=" + metadata.blockSize + ", ");
+		}
+		for(int column : metadata.dictionaries.keySet()) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_DICTIONARY + "=" + column + ", ");
+		}
+		for(int column : metadata.bloomFilters) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_BLOOMFILTER + "=" + column + ", ");
+		}
+		if(0 != metadata.lastSequence) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_SEQUENCE + "=" + metadata.lastSequence + ", ");
+		}
+		if(metadata.changeLog) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_CHANGELOG + "=" + DatabaseMetadata.STROPTION_ON + ", ");
+		}
+		if(0 != metadata.schemaVersion) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_SCHEMA + "=" + metadata.schemaVersion + ", ");
+		}
+		if(metadata.clusterColumnId >= 0) {
+			fourthLine.append(
+					DatabaseMetadata.OPT_CLUSTER + "=" + metadata.clusterColumnId + ", ");
+			fourthLine.append(
+					DatabaseMetadata.OPT_SORTED + "=" + metadata.sortedEntries + ", ");
+		}
+		
+		if(!fourthLine.isEmpty()) outArr.add(fourthLine.toString());
+		
+		// Unparse the schema history (only once changed)
+		if(0 != metadata.schemaVersion) {
+			
+			// One line per field, by ID
+			for(int columnId=0; columnId<metadata.nextColumnId; columnId++) {
+				Integer type = metadata.columnTypes.get(columnId);
+				if(null == type) continue;
+				
+				Object defaultValue = metadata.columnDefaults.get(columnId);
+				
+				outArr.add(DatabaseMetadata.SCHEMA_COLUMN + ", " + 
+						columnId + ", " + 
+						unparseTypeToStr(type) + ", " + 
+						((null == defaultValue) ? "" : defaultValue.toString()) + ", ");
+			}
+			
+			// One line per version, in order
+			for(int v=0; v<metadata.versionColumnIds.size(); v++) {
+				StringBuffer versionLine = new StringBuffer(
+						DatabaseMetadata.SCHEMA_VERSION + ", " + v + ", ");
+				
+				for(int columnId : metadata.versionColumnIds.get(v)) {
+					versionLine.append(columnId + ", ");
+				}
+				
+				outArr.add(versionLine.toString());
+			}
+		}
+		
+		return outArr;
+	}
+	
+	// Parses the dictionaries of "dbMeta" from an array of Strings
+	// Returns false if the dictionaries are invalid
+	private boolean parseDictionariesFromStrArr(ArrayList<String> strArr, DatabaseMetadata dbMeta) {
+		
+		// Two lines per dictionary
+		for(int l=0; l+1<strArr.size(); l+=2) {
+			
+			String header = strArr.get(l);
+			String valuesLine = strArr.get(l+1);
+			
+			// First line holds <column>, <nValues>,
+			int column = -1, nValues = -1;
+			try {
+				column = Integer.parseInt(extractValueFromStr(header, 0));
+				nValues = Integer.parseInt(extractValueFromStr(header, 1));
+			} catch (NumberFormatException | NullPointerException e) {
+				return false;
+			}
+			
+			// Skip dictionaries of non encoded columns
+			StringDictionary dictionary = dbMeta.dictionaries.get(column);
+			if(null == dictionary) continue;
+			
+			// Second line holds the values, ordered by code
+			StringBuffer strBuffer = new StringBuffer();
+			for(int i=0; i<valuesLine.length(); i++) {
+				if(',' == valuesLine.charAt(i)) {
+					
+					dictionary.getOrAddCode(strBuffer.toString().trim());
+					
+					// Clear the buffer
+					if(!strBuffer.isEmpty())
+						strBuffer.delete(0, strBuffer.length());
+				} else {
+					strBuffer.append(valuesLine.charAt(i)); // Update the buffer
+				}
+			}
+			
+			if(dictionary.size() != nValues) return false;
+		}
+		
+		return true;
+	}
+	
+	// Converts the dictionaries of "metadata" back to a String array
+	private ArrayList<String> unparseDictionariesToStrArr(DatabaseMetadata metadata) {
+		
+		ArrayList<String> outArr = new ArrayList<String>();
+		
+		for(int column : metadata.dictionaries.keySet()) {
+			StringDictionary dictionary = metadata.dictionaries.get(column);
+			
+			outArr.add(column + ", " + dictionary.size() + ", ");
+			
+			StringBuffer valuesLine = new StringBuffer();
+			for(String value : dictionary.values) {
+				valuesLine.append(value + ", ");
+			}
+			outArr.add(valuesLine.toString());
+		}
+		
 		return outArr;
 	}
 	
@@ -670,6 +3029,342 @@ public class DatabaseMS<T> {
 		return strArr;
 	}
 	
+	// Commits a new version of the table: logs "change" (if not
+	// null), writes the data (unless "dataStrArr" is null), then the
+	// metadata, and finally notifies the listeners of "change".
+	// The change is numbered under the lock, so that sequence 
+	// numbers follow the commit order. A merge of the delta of a
+	// clustered table adds an OP_REORDER change.
+	// Open snapshots keep seeing their own version.
+	private void commit(DatabaseMetadata dbMetadata, ArrayList<String> dataStrArr, ChangeEvent change) {
+		
+		SnapshotRegistry registry = SnapshotRegistry.of(dbFilePath);
+		
+		ArrayList<ChangeEvent> changes = new ArrayList<ChangeEvent>(1);
+		if(null != change) changes.add(change);
+		
+		synchronized(registry) {
+			if(null != dataStrArr && dbMetadata.clusterColumnId >= 0) {
+				
+				// Clustered tables keep their sorted entries first
+				try {
+					int[] order = maintainClustering(dbMetadata, dataStrArr);
+					if(null != order) addReorderChange(changes, order);
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					// Unreadable keys, nothing is known to be sorted
+					dbMetadata.sortedEntries = 0;
+				}
+			}
+			
+			for(ChangeEvent numbered : changes) {
+				numbered.sequence = ++dbMetadata.lastSequence;
+			}
+			if(!appendChangeLog(dbMetadata, changes)) return;
+			
+			// The dictionaries go before the data that uses them
+			int nDropped = storeDictionaries(dbMetadata, true);
+			if(nDropped < 0) return;
+			
+			if(null != dataStrArr) {
+				writeDataLines(dbMetadata, dataStrArr);
+				if(OPERATIONSUCCESS != lastOperationStatus) return;
+			}
+			
+			storeMetadata(dbMetadata);
+			if(nDropped > 0) storeDictionaries(dbMetadata, false);
+			registry.committed();
+		}
+		
+		if(OPERATIONSUCCESS == lastOperationStatus) notifyChanges(changes);
+	}
+	
+	// Same as commit(), without any change to publish
+	private void commit(DatabaseMetadata dbMetadata, ArrayList<String> dataStrArr) {
+		commit(dbMetadata, dataStrArr, null);
+	}
+	
+	// Same as commit(), with the data already written to "tmpFilePath"
+	// by a bulk import, which appended "nChanges" entries from real 
+	// index "firstIndex" on
+	private void commitDataFile(DatabaseMetadata dbMetadata, String tmpFilePath, 
+			int firstIndex, int nChanges) {
+		
+		SnapshotRegistry registry = SnapshotRegistry.of(dbFilePath);
+		
+		long firstSequence = dbMetadata.lastSequence + 1;
+		
+		synchronized(registry) {
+			// The dictionaries go before the data that uses them
+			int nDropped = storeDictionaries(dbMetadata, true);
+			if(nDropped < 0) {
+				deleteTempFile(tmpFilePath);
+				return;
+			}
+			
+			// Log the imported entries (from the new file) before
+			// they reach <data>.txt, as commit() does
+			if(dbMetadata.changeLog && !readBulkChanges(dbMetadata, tmpFilePath, firstIndex, 
+					nChanges, firstSequence, changes -> appendChangeLog(dbMetadata, changes))) {
+				deleteTempFile(tmpFilePath);
+				return;
+			}
+			
+			try {
+				SnapshotRegistry.replaceFile(tmpFilePath, dbFilePath);
+			} catch (IOException e) {
+				e.printStackTrace();
+				lastOperationStatus = FILEWRITINGERROR;
+				deleteTempFile(tmpFilePath);
+				return;
+			}
+			dbMetadata.lastSequence += nChanges;
+			
+			storeMetadata(dbMetadata);
+			if(nDropped > 0) storeDictionaries(dbMetadata, false);
+			registry.committed();
+		}
+		
+		// Avoid reading the entries back for nobody
+		if(OPERATIONSUCCESS == lastOperationStatus && !changeListeners.isEmpty()) {
+			readBulkChanges(dbMetadata, dbFilePath, firstIndex, nChanges, firstSequence, changes -> {
+				notifyChanges(changes);
+				return true;
+			});
+		}
+	}
+	
+	// Writers hold this lock (the commit one) from loading the
+	// metadata until their commit, so that concurrent writers don't
+	// lose each other's updates, and number their changes in commit
+	// order. This only holds within a single JVM.
+	private Object writeLock() {
+		return SnapshotRegistry.of(dbFilePath);
+	}
+	
+	// Deserializes and parses <metadata>.txt, along with the 
+	// dictionaries of the dictionary encoded columns
+	// Returns null if invalid
+	private DatabaseMetadata loadMetadata() {
+		
+		DatabaseMetadata dbMetadata = parseMetadataFromStrArr(deserializeFile(metaFilePath));
+		if(null == dbMetadata || dbMetadata.dictionaries.isEmpty()) return dbMetadata;
+		
+		// No dictionary file yet means empty dictionaries
+		if(!Files.exists(Path.of(getDictionaryFilePath()))) return dbMetadata;
+		
+		ArrayList<String> dictStrArr = deserializeFile(getDictionaryFilePath());
+		
+		if(null != dictStrArr && !parseDictionariesFromStrArr(dictStrArr, dbMetadata)) {
+			lastOperationStatus = INVALIDMETADATAFORMAT;
+			return null;
+		}
+		
+		lastOperationStatus = OPERATIONSUCCESS;
+		return dbMetadata;
+	}
+	
+	// Serializes <metadata>.txt (the dictionaries are stored
+	// before the data, see storeDictionaries())
+	private void storeMetadata(DatabaseMetadata dbMetadata) {
+		serializeFile(metaFilePath, unparseMetadataToStrArr(dbMetadata));
+	}
+	
+	// Serializes the dictionaries, before the data and the metadata 
+	// that use them. Since dictionaries only grow, the <data>.txt
+	// on disk can still be read with the new file if the commit 
+	// stops halfway. "keepDropped" keeps the dictionaries of the file
+	// that "dbMetadata" doesn't encode anymore, for the same reason.
+	// Returns the amount of dictionaries kept, or -1 if the file
+	// couldn't be written
+	private int storeDictionaries(DatabaseMetadata dbMetadata, boolean keepDropped) {
+		
+		ArrayList<String> dictStrArr = unparseDictionariesToStrArr(dbMetadata);
+		int nDropped = 0;
+		
+		Path dictPath = Path.of(getDictionaryFilePath());
+		if(keepDropped && Files.exists(dictPath)) {
+			try {
+				// Two lines per dictionary
+				List<String> oldStrArr = Files.readAllLines(dictPath);
+				for(int l=0; l+1<oldStrArr.size(); l+=2) {
+					
+					String column = extractValueFromStr(oldStrArr.get(l), 0);
+					if(null == column) continue;
+					
+					if(!dbMetadata.dictionaries.containsKey(Integer.parseInt(column))) {
+						dictStrArr.add(oldStrArr.get(l));
+						dictStrArr.add(oldStrArr.get(l+1));
+						nDropped++;
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				lastOperationStatus = FILEREADINGERROR;
+				return -1;
+			} catch (NumberFormatException e) {
+				// Unreadable dictionary, it can't be kept
+			}
+		}
+		
+		// Nothing to write
+		if(dictStrArr.isEmpty() && !Files.exists(dictPath)) return 0;
+		
+		serializeFile(getDictionaryFilePath(), dictStrArr);
+		return (OPERATIONSUCCESS == lastOperationStatus) ? nDropped : -1;
+	}
+	
+	// Path of the dictionaries file, next to <metadata>.txt
+	private String getDictionaryFilePath() {
+		return metaFilePath + ".dict";
+	}
+	
+	// Reads every line of <data>.txt, decompressing it if needed
+	private ArrayList<String> readDataLines(DatabaseMetadata dbMetadata) {
+		
+		if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) {
+			return deserializeFile(dbFilePath);
+		}
+		
+		try {
+			return BlockDataFile.readAllLines(dbFilePath);
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+			return null;
+		}
+	}
+	
+	// Reads only the line of the entry at real index "index"
+	// Returns null (NONEXISTANTID) if there is no such entry
+	private String readDataLine(int index, DatabaseMetadata dbMetadata) {
+		
+		// Compressed data only needs the block holding the entry
+		if(DatabaseMetadata.COMPRESSION_NONE != dbMetadata.compression) {
+			return readBlockLine(index, dbMetadata);
+		}
+		
+		ArrayList<String> dataStrArr = readDataLinesOrEmpty(dbMetadata);
+		if(null == dataStrArr) return null;
+		
+		removeEmptyLines(dataStrArr);
+		
+		if(index < 0 || index >= dataStrArr.size()) {
+			lastOperationStatus = NONEXISTANTID;
+			return null;
+		}
+		
+		return dataStrArr.get(index);
+	}
+	
+	// Removes the empty lines (which aren't entries), so that 
+	// line indices match real indices
+	private void removeEmptyLines(ArrayList<String> strArr) {
+		strArr.removeIf(line -> null == line || 0 >= line.length());
+	}
+	
+	// Same as readDataLines(), but an empty <data>.txt is 
+	// read as an empty table instead of an error
+	private ArrayList<String> readDataLinesOrEmpty(DatabaseMetadata dbMetadata) {
+		
+		ArrayList<String> dataStrArr = readDataLines(dbMetadata);
+		
+		if(null == dataStrArr && EMPTYLOADEDFILE == lastOperationStatus) {
+			dataStrArr = new ArrayList<String>();
+			lastOperationStatus = OPERATIONSUCCESS;
+		}
+		
+		return dataStrArr;
+	}
+	
+	// Writes every line of <data>.txt, compressing it if needed
+	private void writeDataLines(DatabaseMetadata dbMetadata, ArrayList<String> strArr) {
+		
+		if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) {
+			serializeFile(dbFilePath, strArr);
+			return;
+		}
+		
+		try {
+			BlockDataFile.writeAllLines(dbFilePath, strArr, dbMetadata.blockSize, 
+					getBlockStatsLayout(dbMetadata));
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEWRITINGERROR;
+		}
+	}
+	
+	// Reads the line at real index "index" from a compressed
+	// <data>.txt, decompressing only the block that holds it
+	private String readBlockLine(int index, DatabaseMetadata dbMetadata) {
+		
+		try(RandomAccessFile raf = BlockDataFile.openFile(dbFilePath)) {
+			BlockDataFile.BlockInfo block = (null == raf) ? null :
+					BlockDataFile.findBlock(BlockDataFile.readDirectory(raf), index);
+			
+			if(null == block) {
+				lastOperationStatus = NONEXISTANTID;
+				return null;
+			}
+			
+			ArrayList<String> lines = BlockDataFile.readBlock(raf, block);
+			return lines.get(index - block.firstRow);
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+			lastOperationStatus = FILEREADINGERROR;
+			return null;
+		}
+	}
+	
+	// Opens a Writer appending lines at the end of "filePath",
+	// in the format of <data>.txt
+	private Writer openDataAppender(DatabaseMetadata dbMetadata, String filePath) throws IOException {
+		
+		if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) {
+			return Files.newBufferedWriter(
+					Paths.get(filePath), 
+					StandardOpenOption.CREATE, 
+					StandardOpenOption.APPEND);
+		}
+		
+		return new BlockDataFile.Appender(filePath, dbMetadata.blockSize, 
+				getBlockStatsLayout(dbMetadata));
+	}
+	
+	// Returns the fields to compute BlockStats for, when writing
+	// compressed blocks (every current field, with the Bloom
+	// filters of the key ones)
+	private BlockStats.Layout getBlockStatsLayout(DatabaseMetadata dbMetadata) {
+		
+		BlockStats.Layout layout = new BlockStats.Layout();
+		layout.schemaVersion = dbMetadata.schemaVersion;
+		layout.columnIds = dbMetadata.columnIds;
+		layout.types = dbMetadata.types;
+		layout.bloomFilters = new boolean[dbMetadata.nElements];
+		
+		for(int c=0; c<dbMetadata.nElements; c++) {
+			layout.bloomFilters[c] = dbMetadata.bloomFilters.contains(dbMetadata.columnIds[c]);
+		}
+		
+		return layout;
+	}
+	
+	// Opens a Reader streaming the lines of <data>.txt
+	private BufferedReader openDataReader(DatabaseMetadata dbMetadata) throws IOException {
+		return openDataReader(dbMetadata, dbFilePath);
+	}
+	
+	// Same as above, for a data file at "filePath" in the format of
+	// <data>.txt (i.e.: the replacement of a commit)
+	private BufferedReader openDataReader(DatabaseMetadata dbMetadata, String filePath) throws IOException {
+		
+		if(DatabaseMetadata.COMPRESSION_NONE == dbMetadata.compression) {
+			return Files.newBufferedReader(Paths.get(filePath));
+		}
+		
+		return new BufferedReader(BlockDataFile.openReader(filePath));
+	}
+	
 	// Serializes a .txt file from an Array of Strings
 	private void serializeFile(String filePath, ArrayList<String> strArr) {
 		
@@ -687,19 +3382,40 @@ public class DatabaseMS<T> {
 			System.out.print("--------------------------\n");
 		}
 		
-		// Write the whole concatenated String to the file
+		// Write the whole concatenated String to a temporary
+		// file, which then replaces the file at once
+		String tmpFilePath = null;
 		try {
+			tmpFilePath = SnapshotRegistry.createTempFile(filePath);
+			
 			Files.writeString(
-					Paths.get(filePath), 
+					Paths.get(tmpFilePath), 
 					fileStrBuffer.toString(), 
-					StandardOpenOption.TRUNCATE_EXISTING);
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+			
+			SnapshotRegistry.replaceFile(tmpFilePath, filePath);
 			
 		} catch (IOException e) {
 			e.printStackTrace();
 			lastOperationStatus = FILEWRITINGERROR;
+			deleteTempFile(tmpFilePath);
 			return;
 		}			
 	}
+	
+	// Deletes a temporary file that won't replace anything
+	private void deleteTempFile(String tmpFilePath) {
+		
+		if(null == tmpFilePath) return;
+		
+		try {
+			Files.deleteIfExists(Path.of(tmpFilePath));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
 	//###################################################//
 	//############ GETTER/SETTER FUNCTIONS ##############//
@@ -752,4 +3468,20 @@ public class DatabaseMS<T> {
 		this.verbose=verbose;
 	}
 	
+	public int getLastBulkRowCount() {
+		return this.lastBulkRowCount;
+	}
+	
+	public double getLastBulkRowsPerSecond() {
+		return this.lastBulkRowsPerSecond;
+	}
+	
+	public int getLastScannedBlockCount() {
+		return this.lastScannedBlockCount;
+	}
+	
+	public int getLastSkippedBlockCount() {
+		return this.lastSkippedBlockCount;
+	}
+	
 }
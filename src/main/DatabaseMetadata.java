@@ -1,6 +1,7 @@
 package main;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 // Holds metadata for an specific
 // database .txt file.
@@ -10,11 +11,72 @@ import java.util.ArrayList;
 // 1| <nEntries>, <nOrphanIDs>, <nElements>,
 // 2| <[orphanIDs]>,
 // 3| <[types]>,
+// 4| <[options]>, (optional)
+// 5+| <[schema history]>, (optional)
 //
 // the [] inside a placeholder indicates that the 
-// data should be placed as a comma-separated array
+// data should be placed as a comma-separated array.
+// Each option is a KEY=VALUE pair, the 4th line is
+// only written when some option isn't the default.
+//
+// Dictionaries of dictionary encoded columns (DICT=<column ID>)
+// are serialized on their own, in <metadata>.txt.dict
+//
+// Compressed blocks hold min/max statistics of the numeric
+// columns, and Bloom filters of the key ones (BLOOM=<column ID>)
+//
+// A clustered table (CLUSTER=<column ID>) keeps its first
+// <SORTED> entries sorted by that field. Entries added after 
+// those (the delta) are merged into them from time to time.
+//
+// The schema history is only written once the schema has
+// changed (SCHEMA=<version> option), one line per column
+// and one line per schema version:
+// | COLUMN, <column ID>, <type>, <default value>,
+// | VERSION, <version>, <[column IDs]>,
+// Entries of <data>.txt written with a schema version other
+// than 0 end with @<version>, after the last separator.
 
 public class DatabaseMetadata {
+	
+	//########## Compression codes ##########//
+	public static final int 
+		COMPRESSION_NONE = 0, // Plain text <data>.txt
+		COMPRESSION_DEFLATE = 1; // Deflate compressed blocks
+	
+	//######## Compression String constants ########//
+	public static final String 
+		STRCOMPRESSION_NONE = "NONE",
+		STRCOMPRESSION_DEFLATE = "DEFLATE";
+	
+	//######## Option keys (4th line) ########//
+	public static final String 
+		OPT_COMPRESSION = "COMPRESSION",
+		OPT_BLOCKSIZE = "BLOCKSIZE",
+		OPT_DICTIONARY = "DICT",
+		OPT_SEQUENCE = "SEQUENCE",
+		OPT_CHANGELOG = "CHANGELOG",
+		OPT_SCHEMA = "SCHEMA",
+		OPT_BLOOMFILTER = "BLOOM",
+		OPT_CLUSTER = "CLUSTER",
+		OPT_SORTED = "SORTED";
+	
+	//######## Schema history line keys (5th+ lines) ########//
+	public static final String 
+		SCHEMA_COLUMN = "COLUMN",
+		SCHEMA_VERSION = "VERSION";
+	
+	// Value of enabled ON/OFF options
+	public static final String STROPTION_ON = "ON";
+	
+	// Default amount of entries per compressed block
+	public static final int DEFAULTBLOCKSIZE = 1024;
+	
+	// Entries of a clustered table are merged into the sorted 
+	// ones once there are more than MINDELTAENTRIES of them, 
+	// and more than 1/DELTARATIO of the sorted ones
+	public static final int MINDELTAENTRIES = 256, DELTARATIO = 16;
+	
 	public int 
 		nEntries, // Number of entries / entities
 		nOrphanIDs; // Number of Available IDs to be re-used
@@ -30,11 +92,69 @@ public class DatabaseMetadata {
 	// each entry, with their respective types
 	public int[] types;
 	
+	// How <data>.txt is stored on disk
+	public int compression;
+	
+	// Amount of entries per compressed block
+	public int blockSize;
+	
+	// Dictionaries of the dictionary encoded (ATR_STR)
+	// columns, by column ID
+	public HashMap<Integer, StringDictionary> dictionaries;
+	
+	// IDs of the (ATR_STR/ATR_INT) key fields whose
+	// values get a Bloom filter in each compressed block
+	public ArrayList<Integer> bloomFilters;
+	
+	// Sequence number of the last committed change
+	public long lastSequence;
+	
+	// Set to true to keep every change in <data>.txt.changes
+	public boolean changeLog;
+	
+	// Current schema version (0 until the first schema change)
+	public int schemaVersion;
+	
+	// Represents the stable ID of each current field, which 
+	// doesn't change when other fields are added/dropped
+	public int[] columnIds;
+	
+	// IDs of the fields of each schema version, by version
+	public ArrayList<int[]> versionColumnIds;
+	
+	// Type and default value of every field that ever
+	// existed, by ID (defaults are null for original fields)
+	public HashMap<Integer, Integer> columnTypes;
+	public HashMap<Integer, Object> columnDefaults;
+	
+	// ID of the next added field
+	public int nextColumnId;
+	
+	// ID of the clustering key field, or -1 if not clustered
+	public int clusterColumnId;
+	
+	// Number of entries (from the first one) sorted by the
+	// clustering key, the next ones being the unsorted delta
+	public int sortedEntries;
+	
 	// Default constructor, just make sure the 
 	// attributes aren't null
 	public DatabaseMetadata() {
 		this.nEntries=0;
 		this.nOrphanIDs=0;
 		this.orphanIDs = new ArrayList<Integer>();
+		this.compression = COMPRESSION_NONE;
+		this.blockSize = DEFAULTBLOCKSIZE;
+		this.dictionaries = new HashMap<Integer, StringDictionary>();
+		this.lastSequence = 0;
+		this.bloomFilters = new ArrayList<Integer>();
+		this.changeLog = false;
+		this.schemaVersion = 0;
+		this.versionColumnIds = new ArrayList<int[]>();
+		this.columnTypes = new HashMap<Integer, Integer>();
+		this.columnDefaults = new HashMap<Integer, Object>();
+		this.nextColumnId = 0;
+		this.clusterColumnId = -1;
+		this.sortedEntries = 0;
 	}
 }
@@ -0,0 +1,154 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+// Connection to a QueryServer (see QueryServer for the protocol).
+//
+// get()/scan()/find() send a single request and wait for its
+// response. To pipeline requests, call the send*() methods as many
+// times as needed, then flush(), then receive() once per request:
+// responses come back in the order the requests were sent.
+
+public class QueryClient implements AutoCloseable {
+
+	// Response to a single request
+	public static class Response {
+		public int requestId;
+
+		// DatabaseMS error code
+		public int status;
+
+		// Real indexes of the entries, and the entries themselves
+		public ArrayList<Integer> indexes = new ArrayList<Integer>();
+		public ArrayList<AbstractArray> entries = new ArrayList<AbstractArray>();
+	}
+
+	private SocketChannel channel;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	// Id of the next request
+	private int nextRequestId = 0;
+
+	private QueryClient(SocketChannel channel) {
+		this.channel = channel;
+		this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+	}
+
+	// Connects to a QueryServer on "port" of the loopback address
+	public static QueryClient connect(int port) throws IOException {
+		return new QueryClient(SocketChannel.open(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+	}
+
+	// Connects to a QueryServer on the Unix domain socket "socketPath"
+	public static QueryClient connect(Path socketPath) throws IOException {
+		return new QueryClient(SocketChannel.open(UnixDomainSocketAddress.of(socketPath)));
+	}
+
+	//###################################################//
+	//############### SINGLE REQUESTS ###################//
+	//###################################################//
+
+	// Same as DatabaseMS.getAbstractEntry()
+	public Response get(String table, int index) throws IOException {
+		sendGet(table, index);
+		flush();
+		return receive();
+	}
+
+	// Returns up to "maxEntries" entries, from real index "firstIndex" on
+	public Response scan(String table, int firstIndex, int maxEntries) throws IOException {
+		sendScan(table, firstIndex, maxEntries);
+		flush();
+		return receive();
+	}
+
+	// Same as DatabaseMS.findAbstractEntries(), along with the entries
+	public Response find(String table, int column, int type, Object value) throws IOException {
+		sendFind(table, column, type, value);
+		flush();
+		return receive();
+	}
+
+	//###################################################//
+	//############### PIPELINED REQUESTS ################//
+	//###################################################//
+
+	// The send*() methods return the id of the request, which
+	// its Response will hold. Nothing is sent before flush()
+
+	public int sendGet(String table, int index) throws IOException {
+		int requestId = writeRequestHeader(QueryServer.OP_GET, table);
+		out.writeInt(index);
+		return requestId;
+	}
+
+	public int sendScan(String table, int firstIndex, int maxEntries) throws IOException {
+		int requestId = writeRequestHeader(QueryServer.OP_SCAN, table);
+		out.writeInt(firstIndex);
+		out.writeInt(maxEntries);
+		return requestId;
+	}
+
+	// "type" is the type code (AbstractArray.ATR_*) of "value"
+	public int sendFind(String table, int column, int type, Object value) throws IOException {
+		int requestId = writeRequestHeader(QueryServer.OP_FIND, table);
+		out.writeInt(column);
+		out.writeInt(type);
+		BinaryRowCodec.writeValue(out, type, value);
+		return requestId;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	// Waits for the response to the oldest unanswered request
+	public Response receive() throws IOException {
+
+		Response response = new Response();
+		response.requestId = in.readInt();
+		response.status = in.readInt();
+
+		int nEntries = in.readInt();
+		if(nEntries <= 0) return response;
+
+		int[] types = BinaryRowCodec.readHeader(in);
+		if(null == types) throw new IOException("Invalid response header");
+
+		for(int e=0; e<nEntries; e++) {
+			response.indexes.add(in.readInt());
+			response.entries.add(BinaryRowCodec.readValues(in, types));
+		}
+
+		return response;
+	}
+
+	private int writeRequestHeader(byte operation, String table) throws IOException {
+		int requestId = nextRequestId++;
+
+		out.writeInt(requestId);
+		out.writeByte(operation);
+		out.writeUTF(table);
+
+		return requestId;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,488 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+// Serves read-only queries (get, scan, find) on a catalog of
+// tables, over a local TCP port or a Unix domain socket.
+// Every table is parsed once and kept in memory, shared by all
+// the connections. It is parsed again once a commit (from this
+// JVM, or a change of its files from another process) made the
+// copy out of date.
+//
+// Every open connection has a thread of its own, which mostly
+// waits for its next request: idle clients never keep the others
+// from being answered. At most a fixed amount of requests (the
+// pool size) are answered at once, the others wait for their turn.
+// Connections past a fixed amount (so, threads) are closed as soon
+// as they are accepted.
+// Clients may send several requests without waiting (pipelining):
+// responses are buffered, and only flushed once no more request is
+// waiting to be read.
+//
+// The request format is as follows:
+// | <requestId> (int)
+// | <operation> (byte, OP_*)
+// | <table> (UTF)
+// | OP_GET: <index> (int)
+// | OP_SCAN: <firstIndex> (int), <maxEntries> (int)
+// | OP_FIND: <column> (int), <type> (int), <value>
+//
+// The response format is as follows:
+// | <requestId> (int)
+// | <status> (int, DatabaseMS error codes)
+// | <nEntries> (int)
+// | <[types]> (BinaryRowCodec header, only if nEntries > 0)
+// | for each entry: <index> (int), then its values
+//
+// Values are written as in BinaryRowCodec.
+
+public class QueryServer implements AutoCloseable {
+
+	//######## Operation constants ########//
+	public static final byte
+		OP_GET = 1, // Entry at an index
+		OP_SCAN = 2, // Entries from an index on
+		OP_FIND = 3; // Entries having a value in a column
+
+	// Default amount of requests answered at once
+	public static final int DEFAULTPOOLSIZE = 8;
+
+	// Default amount of connections open at once
+	public static final int DEFAULTMAXCONNECTIONS = 256;
+
+	// In memory copy of a table
+	private static class CachedTable {
+		String dbFilePath, metaFilePath;
+		DatabaseMS<Object> db;
+
+		// Parsed entries, replaced (never modified) on reload
+		volatile ArrayList<AbstractArray> entries;
+
+		// What the copy was loaded from, and when (see 
+		// TableImage.isCurrent())
+		long version = -1;
+		TableImage.FileStamp dbFileStamp, metaFileStamp;
+		long loadedAt;
+	}
+
+	// Tables by name
+	private HashMap<String, CachedTable> tables = new HashMap<String, CachedTable>();
+
+	private ServerSocketChannel serverChannel;
+	private ExecutorService connectionThreads;
+	private Thread acceptThread;
+
+	// One permit per request answered at once
+	private Semaphore requestPermits;
+
+	// One permit per open connection
+	private Semaphore connectionPermits;
+
+	public QueryServer() {
+		this(DEFAULTPOOLSIZE);
+	}
+
+	// Answers at most "poolSize" requests at once, whatever the
+	// amount of open connections
+	public QueryServer(int poolSize) {
+		this(poolSize, DEFAULTMAXCONNECTIONS);
+	}
+
+	// Same as above, with at most "maxConnections" open at once
+	public QueryServer(int poolSize, int maxConnections) {
+		this.requestPermits = new Semaphore(Math.max(1, poolSize));
+		this.connectionPermits = new Semaphore(Math.max(1, maxConnections));
+	}
+
+	//###################################################//
+	//##################### CATALOG #####################//
+	//###################################################//
+
+	// Serves the table stored at "dbFilePath"/"metaFilePath" as "name"
+	public synchronized void addTable(String name, String dbFilePath, String metaFilePath) {
+
+		CachedTable table = new CachedTable();
+		table.dbFilePath = dbFilePath;
+		table.metaFilePath = metaFilePath;
+		table.db = new DatabaseMS<Object>(dbFilePath, metaFilePath);
+
+		tables.put(name, table);
+	}
+
+	public synchronized void removeTable(String name) {
+		tables.remove(name);
+	}
+
+	private synchronized CachedTable getTable(String name) {
+		return tables.get(name);
+	}
+
+	// Returns the entries of "table", parsing them again if the
+	// files changed since they were loaded
+	// Returns null if the table couldn't be loaded
+	private ArrayList<AbstractArray> loadEntries(CachedTable table) {
+
+		synchronized(table) {
+			long version = SnapshotRegistry.of(table.dbFilePath).getVersion();
+
+			if(null != table.entries && version == table.version && isCurrent(table)) {
+				return table.entries;
+			}
+
+			// Stamped before reading: a write during the load makes
+			// the copy out of date, never the other way around
+			long loadedAt = System.currentTimeMillis();
+			TableImage.FileStamp dbFileStamp, metaFileStamp;
+			try {
+				dbFileStamp = TableImage.stampFile(table.dbFilePath, true);
+				metaFileStamp = TableImage.stampFile(table.metaFilePath, true);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+
+			// A current startup image is decoded without any parsing
+			// (it is never written here, see DatabaseMS.writeImage())
+			try(TableImage image = table.db.openCurrentImage()) {
+				if(null != image) {
+					ArrayList<AbstractArray> entries = image.getAllAbstractEntries();
+
+					if(null != entries) {
+						table.entries = entries;
+						table.version = version;
+						table.dbFileStamp = dbFileStamp;
+						table.metaFileStamp = metaFileStamp;
+						table.loadedAt = loadedAt;
+
+						return table.entries;
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			// Otherwise read a consistent version of both files
+			try(TableSnapshot snapshot = table.db.openSnapshot()) {
+				if(null == snapshot) return null;
+
+				ArrayList<AbstractArray> entries = snapshot.getAllAbstractEntries();
+				if(DatabaseMS.OPERATIONSUCCESS != snapshot.getLastOperationStatus() &&
+					DatabaseMS.EMPTYLOADEDFILE != snapshot.getLastOperationStatus()) {
+					return null;
+				}
+
+				table.entries = entries;
+				table.version = snapshot.getVersion();
+			}
+
+			table.dbFileStamp = dbFileStamp;
+			table.metaFileStamp = metaFileStamp;
+			table.loadedAt = loadedAt;
+
+			return table.entries;
+		}
+	}
+
+	// Whether the files of "table" still match its copy, written by
+	// another process or not (same checks as a startup image)
+	private static boolean isCurrent(CachedTable table) {
+
+		long checkedAt = System.currentTimeMillis();
+
+		try {
+			if(!isCurrent(table.dbFileStamp, table.dbFilePath, table.loadedAt) ||
+				!isCurrent(table.metaFileStamp, table.metaFilePath, table.loadedAt)) {
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+
+		// Files written close to the load are checksummed on every
+		// check. Once MTIMEWINDOW has passed, any later write gets 
+		// another modification time: the copy is as good as loaded now
+		long lastModified = Math.max(table.dbFileStamp.lastModified, table.metaFileStamp.lastModified);
+		if(lastModified > table.loadedAt - TableImage.MTIMEWINDOW &&
+			lastModified < checkedAt - TableImage.MTIMEWINDOW) {
+			table.loadedAt = checkedAt;
+		}
+
+		return true;
+	}
+
+	private static boolean isCurrent(TableImage.FileStamp stamp, String filePath, long loadedAt) 
+			throws IOException {
+
+		// Written since (or only touched): loading it again once is
+		// cheaper than a checksum on every request
+		TableImage.FileStamp current = TableImage.stampFile(filePath, false);
+		if(current.size != stamp.size || current.lastModified != stamp.lastModified) return false;
+
+		return TableImage.isCurrent(stamp, filePath, loadedAt);
+	}
+
+	//###################################################//
+	//##################### SERVING #####################//
+	//###################################################//
+
+	// Starts serving on "port" of the loopback address only
+	// (0 picks a free port, see getPort())
+	public void start(int port) throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.INET);
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		start(channel);
+	}
+
+	// Starts serving on the Unix domain socket "socketPath"
+	public void start(Path socketPath) throws IOException {
+		Files.deleteIfExists(socketPath);
+
+		ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		channel.bind(UnixDomainSocketAddress.of(socketPath));
+		start(channel);
+	}
+
+	private synchronized void start(ServerSocketChannel channel) {
+
+		serverChannel = channel;
+		connectionThreads = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "QueryServer-connection");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		acceptThread = new Thread(this::acceptConnections, "QueryServer-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	// Returns the TCP port served, or -1
+	public int getPort() {
+		try {
+			if(serverChannel.getLocalAddress() instanceof InetSocketAddress) {
+				return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return -1;
+	}
+
+	// Stops accepting connections, and closes the open ones
+	@Override
+	public synchronized void close() {
+
+		if(null == serverChannel) return;
+
+		try {
+			if(serverChannel.getLocalAddress() instanceof UnixDomainSocketAddress) {
+				Files.deleteIfExists(((UnixDomainSocketAddress) serverChannel.getLocalAddress()).getPath());
+			}
+			serverChannel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		connectionThreads.shutdownNow();
+		serverChannel = null;
+	}
+
+	private void acceptConnections() {
+
+		ServerSocketChannel channel = serverChannel;
+
+		while(channel.isOpen()) {
+			SocketChannel connection = null;
+			try {
+				connection = channel.accept();
+
+				// Too many connections, the client sees it closed
+				if(!connectionPermits.tryAcquire()) {
+					connection.close();
+					continue;
+				}
+
+				SocketChannel accepted = connection;
+				connectionThreads.execute(() -> {
+					try {
+						serveConnection(accepted);
+					} finally {
+						connectionPermits.release();
+					}
+				});
+			} catch (IOException e) {
+				// Closed by close()
+				return;
+			} catch (RejectedExecutionException e) {
+				// Stopped by close()
+				connectionPermits.release();
+				closeQuietly(connection);
+				return;
+			}
+		}
+	}
+
+	private static void closeQuietly(SocketChannel connection) {
+		try {
+			if(null != connection) connection.close();
+		} catch (IOException e) {
+			// Nothing left to do with it
+		}
+	}
+
+	// Answers the requests of a single connection until it is closed
+	private void serveConnection(SocketChannel connection) {
+
+		try(SocketChannel channel = connection;
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Channels.newInputStream(channel)));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+			while(!Thread.currentThread().isInterrupted()) {
+
+				int requestId;
+				try {
+					requestId = in.readInt();
+				} catch (EOFException e) {
+					return; // Closed by the client
+				}
+
+				serveRequest(requestId, in, out);
+
+				// Batch the responses of pipelined requests
+				if(0 >= in.available()) out.flush();
+			}
+		} catch (IOException e) {
+			// Connection lost, nothing to answer
+		} catch (InterruptedException e) {
+			// Stopped by close()
+		}
+	}
+
+	// Reads the rest of a request, and writes its response
+	private void serveRequest(int requestId, DataInputStream in, DataOutputStream out) 
+			throws IOException, InterruptedException {
+
+		byte operation = in.readByte();
+		String tableName = in.readUTF();
+
+		// Read the arguments first, so the stream stays in
+		// sync whatever the answer
+		int index = 0, count = 0, column = 0;
+		Object value = null;
+
+		switch(operation) {
+		case OP_GET:
+			index = in.readInt();
+			count = 1;
+			break;
+		case OP_SCAN:
+			index = in.readInt();
+			count = in.readInt();
+			break;
+		case OP_FIND:
+			column = in.readInt();
+			value = BinaryRowCodec.readValue(in, in.readInt());
+			break;
+		default:
+			// Unknown operation, the stream can't be followed anymore
+			writeResponse(out, requestId, DatabaseMS.INVALIDSEARCHCRITERIA, null, null);
+			out.flush();
+			throw new IOException("Unknown operation " + operation);
+		}
+
+		CachedTable table = getTable(tableName);
+		if(null == table) {
+			writeResponse(out, requestId, DatabaseMS.NONEXISTANTID, null, null);
+			return;
+		}
+
+		// Only the lookup itself takes a permit: a client slow to
+		// send its requests, or to read its responses, holds none
+		ArrayList<AbstractArray> entries;
+		ArrayList<Integer> indexes = new ArrayList<Integer>();
+		int status;
+
+		requestPermits.acquire();
+		try {
+			entries = loadEntries(table);
+			status = findIndexes(entries, operation, index, count, column, value, indexes);
+		} finally {
+			requestPermits.release();
+		}
+
+		writeResponse(out, requestId, status, indexes, entries);
+	}
+
+	// Adds the real indexes answering a request to "indexes"
+	// Returns the status of the response
+	private int findIndexes(ArrayList<AbstractArray> entries, byte operation,
+			int index, int count, int column, Object value, ArrayList<Integer> indexes) {
+
+		if(null == entries) return DatabaseMS.FILEREADINGERROR;
+
+		if(OP_FIND == operation) {
+			if(null == value || column < 0) return DatabaseMS.INVALIDSEARCHCRITERIA;
+
+			for(int i=0; i<entries.size(); i++) {
+				AbstractArray entry = entries.get(i);
+				if(column < entry.nElements && value.equals(entry.elements[column])) {
+					indexes.add(i);
+				}
+			}
+		} else {
+			if(index < 0 || index >= entries.size() || count < 0) return DatabaseMS.NONEXISTANTID;
+
+			int end = (int) Math.min((long) index + count, entries.size());
+			for(int i=index; i<end; i++) {
+				indexes.add(i);
+			}
+		}
+
+		return DatabaseMS.OPERATIONSUCCESS;
+	}
+
+	private void writeResponse(DataOutputStream out, int requestId, int status,
+			ArrayList<Integer> indexes, ArrayList<AbstractArray> entries) throws IOException {
+
+		out.writeInt(requestId);
+		out.writeInt(status);
+
+		if(null == indexes || indexes.isEmpty()) {
+			out.writeInt(0);
+			return;
+		}
+
+		out.writeInt(indexes.size());
+
+		// Every entry has the current fields
+		BinaryRowCodec.writeHeader(out, entries.get(indexes.get(0)).types);
+
+		for(int index : indexes) {
+			out.writeInt(index);
+			BinaryRowCodec.writeValues(out, entries.get(index));
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package main;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.RecordComponent;
+
+// Maps a Java class to the columns of a DatabaseMS, so that
+// getData/addData/setData/removeData can read and write it
+// straight from/to the lines of <data>.txt, without going
+// through an AbstractArray (see DatabaseMS.bindSchema()).
+//
+// The accessors and constructors are looked up once, as
+// MethodHandles, when the codec is created. Nothing is
+// reflected per entry. Entries of the current schema version
+// are decoded by a single handle, which reads each value with
+// the parser of its type and passes it on to the constructor
+// (or setter): no array per entry, nor boxing of primitive fields.
+//
+// Column N maps to:
+// - the N-th component of a record class (ofRecord())
+// - the N-th given field of a plain class (ofPojo()), which
+//   needs a no-argument constructor
+public class RecordCodec<T> {
+
+	// Type code (AbstractArray.ATR_*) of each column
+	public int[] types;
+
+	// Class of the mapped objects
+	private Class<T> type;
+
+	// Returns the value of a column, as (Object)Object
+	private MethodHandle[] getters;
+
+	// Record: canonical constructor, as (Object[])Object
+	// POJO: no-argument constructor, as ()Object
+	private MethodHandle constructor;
+
+	// POJO only: sets the value of a column, as (Object,Object)void
+	private MethodHandle[] setters;
+
+	// Builds an object from the values of a line, as (Values)Object
+	private MethodHandle decoder;
+
+	// Values.next*() of each type code (AbstractArray.ATR_*)
+	private static final MethodHandle[] VALUEREADERS = new MethodHandle[6];
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			VALUEREADERS[AbstractArray.ATR_INT] = lookup.findVirtual(Values.class, "nextInt", 
+					MethodType.methodType(int.class));
+			VALUEREADERS[AbstractArray.ATR_STR] = lookup.findVirtual(Values.class, "nextString", 
+					MethodType.methodType(String.class));
+			VALUEREADERS[AbstractArray.ATR_DBL] = lookup.findVirtual(Values.class, "nextDouble", 
+					MethodType.methodType(double.class));
+			VALUEREADERS[AbstractArray.ATR_FLT] = lookup.findVirtual(Values.class, "nextFloat", 
+					MethodType.methodType(float.class));
+			VALUEREADERS[AbstractArray.ATR_CHR] = lookup.findVirtual(Values.class, "nextChar", 
+					MethodType.methodType(char.class));
+			VALUEREADERS[AbstractArray.ATR_BOL] = lookup.findVirtual(Values.class, "nextBoolean", 
+					MethodType.methodType(boolean.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private RecordCodec(Class<T> type, int nColumns) {
+		this.type = type;
+		this.types = new int[nColumns];
+		this.getters = new MethodHandle[nColumns];
+	}
+
+	//###################################################//
+	//#################### FACTORIES ####################//
+	//###################################################//
+
+	// Creates the codec of a record class, one column per component
+	// Returns null if a component has no matching type code
+	public static <T extends Record> RecordCodec<T> ofRecord(Class<T> type) {
+
+		RecordComponent[] components = type.getRecordComponents();
+		RecordCodec<T> codec = new RecordCodec<T>(type, components.length);
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+			Class<?>[] componentTypes = new Class<?>[components.length];
+
+			for(int c=0; c<components.length; c++) {
+				componentTypes[c] = components[c].getType();
+
+				codec.types[c] = typeCodeOf(componentTypes[c]);
+				if(codec.types[c] < 0) return null;
+
+				codec.getters[c] = lookup.unreflect(components[c].getAccessor())
+						.asType(MethodType.methodType(Object.class, Object.class));
+			}
+
+			MethodHandle canonical = lookup.findConstructor(type, MethodType.methodType(void.class, componentTypes));
+
+			// Canonical constructor, taking every value in an Object[]
+			codec.constructor = canonical
+					.asType(MethodType.genericMethodType(components.length))
+					.asSpreader(Object[].class, components.length);
+
+			// Canonical constructor, each argument read from the line
+			// in column order: the reader of column N is folded in
+			// before the constructor is called with it
+			MethodHandle decoder = MethodHandles.dropArguments(canonical, components.length, Values.class);
+			for(int c=components.length-1; c>=0; c--) {
+				decoder = MethodHandles.foldArguments(decoder, c, 
+						valueReader(codec.types[c], componentTypes[c]));
+			}
+			codec.decoder = decoder.asType(MethodType.methodType(Object.class, Values.class));
+
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			return null;
+		}
+
+		return codec;
+	}
+
+	// Creates the codec of a plain class, column N being the field "fieldNames[N]"
+	// Returns null if a field is missing, or has no matching type code
+	public static <T> RecordCodec<T> ofPojo(Class<T> type, String... fieldNames) {
+
+		RecordCodec<T> codec = new RecordCodec<T>(type, fieldNames.length);
+		codec.setters = new MethodHandle[fieldNames.length];
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+
+			// Sets every field, read from the line in column order, 
+			// as (T,Values)void
+			MethodHandle setAll = MethodHandles.empty(MethodType.methodType(void.class, type, Values.class));
+
+			for(int c=0; c<fieldNames.length; c++) {
+				Field field = type.getDeclaredField(fieldNames[c]);
+
+				codec.types[c] = typeCodeOf(field.getType());
+				if(codec.types[c] < 0) return null;
+
+				MethodHandle setter = lookup.unreflectSetter(field);
+
+				codec.getters[c] = lookup.unreflectGetter(field)
+						.asType(MethodType.methodType(Object.class, Object.class));
+				codec.setters[c] = setter
+						.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+				// The previous fields are set first
+				setAll = MethodHandles.foldArguments(
+						MethodHandles.filterArguments(setter, 1, valueReader(codec.types[c], field.getType())),
+						setAll);
+			}
+
+			MethodHandle noArgs = lookup.findConstructor(type, MethodType.methodType(void.class));
+			codec.constructor = noArgs.asType(MethodType.methodType(Object.class));
+
+			// New instance, its fields set, then returned
+			MethodHandle decoder = MethodHandles.dropArguments(MethodHandles.identity(type), 1, Values.class);
+			decoder = MethodHandles.foldArguments(decoder, setAll);
+			decoder = MethodHandles.foldArguments(decoder, noArgs);
+			codec.decoder = decoder.asType(MethodType.methodType(Object.class, Values.class));
+
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			return null;
+		}
+
+		return codec;
+	}
+
+	// Returns the type code (AbstractArray.ATR_*) of a Java type,
+	// or -1 if it has none
+	public static int typeCodeOf(Class<?> javaType) {
+		if(int.class == javaType || Integer.class == javaType) return AbstractArray.ATR_INT;
+		if(String.class == javaType) return AbstractArray.ATR_STR;
+		if(double.class == javaType || Double.class == javaType) return AbstractArray.ATR_DBL;
+		if(float.class == javaType || Float.class == javaType) return AbstractArray.ATR_FLT;
+		if(char.class == javaType || Character.class == javaType) return AbstractArray.ATR_CHR;
+		if(boolean.class == javaType || Boolean.class == javaType) return AbstractArray.ATR_BOL;
+		return -1;
+	}
+
+	// Values.next*() of type code "typeCode", as (Values)"javaType"
+	private static MethodHandle valueReader(int typeCode, Class<?> javaType) {
+		return VALUEREADERS[typeCode].asType(MethodType.methodType(javaType, Values.class));
+	}
+
+	//###################################################//
+	//############### DECODING / ENCODING ###############//
+	//###################################################//
+
+	// Builds an object from the values of "values", which must
+	// hold a line of the current schema version
+	// Returns null if it couldn't be built (i.e.: invalid values)
+	public T decode(Values values) {
+		try {
+			return type.cast((Object) decoder.invokeExact(values));
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	// Decoding an object from already parsed values (i.e.: an 
+	// upgraded entry of an older schema version) goes as follows:
+	// builder = newBuilder(), then setValue(builder, column, value)
+	// for every column, then build(builder).
+
+	// Returns null if the object couldn't be instantiated
+	public Object newBuilder() {
+
+		// Records are built at once from their values
+		if(null == setters) return new Object[types.length];
+
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	// Returns false if the value couldn't be set
+	public boolean setValue(Object builder, int column, Object value) {
+
+		if(null == setters) {
+			((Object[]) builder)[column] = value;
+			return true;
+		}
+
+		try {
+			setters[column].invokeExact(builder, value);
+			return true;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			return false;
+		}
+	}
+
+	// Returns null if the object couldn't be built (i.e.: missing values)
+	public T build(Object builder) {
+
+		if(null != setters) return type.cast(builder);
+
+		try {
+			return type.cast((Object) constructor.invokeExact((Object[]) builder));
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	// Returns the value of "column" in "obj", or null if it couldn't be read
+	public Object getValue(T obj, int column) {
+		try {
+			return (Object) getters[column].invokeExact((Object) obj);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	//###################################################//
+	//##################### VALUES ######################//
+	//###################################################//
+
+	// Reads the values of a line of <data>.txt one after the other,
+	// each parsed straight to its type. One instance can be reused
+	// for many lines (see reset()).
+	public static class Values {
+
+		// Dictionary of each column, or null if not encoded
+		private StringDictionary[] dictionaries;
+
+		private String line;
+
+		// Start of the next value, and its column
+		private int start;
+		private int column;
+
+		public Values(StringDictionary[] dictionaries) {
+			this.dictionaries = dictionaries;
+		}
+
+		// Starts reading "line" from its first value
+		public void reset(String line) {
+			this.line = line;
+			this.start = 0;
+			this.column = 0;
+		}
+
+		public int nextInt() {
+			return Integer.parseInt(next());
+		}
+
+		public double nextDouble() {
+			return Double.parseDouble(next());
+		}
+
+		public float nextFloat() {
+			return Float.parseFloat(next());
+		}
+
+		// Takes only the first char
+		public char nextChar() {
+			return next().charAt(0);
+		}
+
+		public boolean nextBoolean() {
+			return Boolean.parseBoolean(next());
+		}
+
+		// Dictionary encoded values are stored as their code. A code
+		// missing from the dictionary is as invalid as a malformed number
+		public String nextString() {
+
+			StringDictionary dictionary = dictionaries[column];
+			String value = next();
+			if(null == dictionary) return value;
+
+			String decoded = dictionary.getValue(Integer.parseInt(value));
+			if(null == decoded) throw new NumberFormatException("Unknown dictionary code: " + value);
+
+			return decoded;
+		}
+
+		// Returns the next (trimmed) value
+		private String next() {
+
+			int end = line.indexOf(',', start);
+			if(end < 0) throw new IndexOutOfBoundsException("Missing value of column " + column);
+
+			String value = line.substring(start, end).trim();
+			start = end + 1;
+			column++;
+
+			return value;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps track of the committed versions of a table (one registry
+// per <data>.txt path) and of the ones still used by open snapshots.
+//
+// Commits never write a file in place: the new content is written
+// to a temporary file of their own (see createTempFile()) which
+// then replaces the old one (see replaceFile()). A snapshot therefore only needs a hard link to
+// the current files to keep reading that version, whatever is
+// committed afterwards. Links are deleted once no open snapshot
+// uses their version, which lets the file system reclaim it.
+//
+// Commits and snapshot creation synchronize on the registry, so a
+// snapshot never sees the data of one commit with the metadata of
+// another. Writers hold it from loading the metadata until their
+// commit. This only holds within a single JVM.
+
+class SnapshotRegistry {
+
+	// Registries by absolute <data>.txt path
+	private static final HashMap<String, SnapshotRegistry> registries =
+			new HashMap<String, SnapshotRegistry>();
+
+	// Files of a version used by open snapshots
+	static class SnapshotFiles {
+		long version;
+		String dbFilePath, metaFilePath;
+		int refCount;
+	}
+
+	// Number of the current (last committed) version
+	private long version = 0;
+
+	// Versions used by open snapshots
+	private HashMap<Long, SnapshotFiles> openVersions = new HashMap<Long, SnapshotFiles>();
+
+	// Numbers the temporary files of this process
+	private static final AtomicLong tmpFileCount = new AtomicLong();
+
+	private SnapshotRegistry() {}
+
+	// Returns the registry of the table stored at "dbFilePath"
+	static synchronized SnapshotRegistry of(String dbFilePath) {
+
+		String key = Path.of(dbFilePath).toAbsolutePath().normalize().toString();
+
+		SnapshotRegistry registry = registries.get(key);
+		if(null == registry) {
+			registry = new SnapshotRegistry();
+			registries.put(key, registry);
+		}
+
+		return registry;
+	}
+
+	// Must be called (synchronized on the registry) once a commit
+	// has replaced the files
+	void committed() {
+		version++;
+	}
+
+	// Number of the current (last committed) version
+	synchronized long getVersion() {
+		return version;
+	}
+
+	// Returns the files of the current version, linking them if
+	// no open snapshot uses that version yet
+	synchronized SnapshotFiles acquire(String dbFilePath, String metaFilePath,
+			String[] extraFilePaths) throws IOException {
+
+		SnapshotFiles files = openVersions.get(version);
+
+		if(null == files) {
+			String suffix = ".snap" + ProcessHandle.current().pid() + "-" + version;
+
+			files = new SnapshotFiles();
+			files.version = version;
+			files.dbFilePath = dbFilePath + suffix;
+			files.metaFilePath = metaFilePath + suffix;
+
+			linkFile(dbFilePath, files.dbFilePath);
+			linkFile(metaFilePath, files.metaFilePath);
+
+			// Files named after <metadata>.txt (i.e. dictionaries)
+			// keep their suffix after the snapshot one
+			for(String extraFilePath : extraFilePaths) {
+				linkFile(extraFilePath, files.metaFilePath + extraFilePath.substring(metaFilePath.length()));
+			}
+
+			openVersions.put(version, files);
+		}
+
+		files.refCount++;
+		return files;
+	}
+
+	// Releases the files acquired by a snapshot, deleting them
+	// once no open snapshot uses them
+	synchronized void release(SnapshotFiles files, String metaFilePath, String[] extraFilePaths) {
+
+		if(--files.refCount > 0) return;
+
+		openVersions.remove(files.version);
+
+		try {
+			Files.deleteIfExists(Path.of(files.dbFilePath));
+			Files.deleteIfExists(Path.of(files.metaFilePath));
+			for(String extraFilePath : extraFilePaths) {
+				Files.deleteIfExists(Path.of(
+						files.metaFilePath + extraFilePath.substring(metaFilePath.length())));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Links "filePath" as "linkPath" (copying it if links aren't supported)
+	// Missing files are skipped
+	private static void linkFile(String filePath, String linkPath) throws IOException {
+
+		Path source = Path.of(filePath);
+		Path link = Path.of(linkPath);
+
+		if(!Files.exists(source)) return;
+
+		Files.deleteIfExists(link);
+		try {
+			Files.createLink(link, source);
+		} catch (UnsupportedOperationException | IOException e) {
+			Files.copy(source, link, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	// Creates an empty temporary file next to "filePath" (on the same
+	// file system, so that it can replace it), which no other writer
+	// uses, and returns its path
+	static String createTempFile(String filePath) throws IOException {
+
+		while(true) {
+			String tmpFilePath = filePath + "." + ProcessHandle.current().pid() +
+					"-" + tmpFileCount.incrementAndGet() + ".tmp";
+
+			try {
+				Files.createFile(Path.of(tmpFilePath));
+				return tmpFilePath;
+			} catch (FileAlreadyExistsException e) {
+				// Left by an earlier process with the same pid
+			}
+		}
+	}
+
+	// Replaces "filePath" by "tmpFilePath" in a single step, so that
+	// readers (and snapshot links) either see the old or the new file
+	static void replaceFile(String tmpFilePath, String filePath) throws IOException {
+		try {
+			Files.move(Path.of(tmpFilePath), Path.of(filePath),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(Path.of(tmpFilePath), Path.of(filePath),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Dictionary of an ATR_STR column.
+// Each distinct value gets an integer code, which is what
+// gets stored in <data>.txt instead of the value itself.
+// Codes are never re-used, so a dictionary only grows.
+//
+// The serialized Dictionary format should be as follows:
+// 1| <column ID>, <nValues>,
+// 2| <[values]>,
+//
+// the value at position N of line 2 is the one with code N.
+
+public class StringDictionary {
+
+	// Code -> value
+	// The same String instance is returned for every entry
+	// holding the value, instead of one copy per entry
+	public ArrayList<String> values;
+
+	// Value -> code
+	private HashMap<String, Integer> codes;
+
+	public StringDictionary() {
+		this.values = new ArrayList<String>();
+		this.codes = new HashMap<String, Integer>();
+	}
+
+	// Returns the code of "value", or -1 if it has none
+	public int getCode(String value) {
+		Integer code = codes.get(value);
+		return (null == code) ? -1 : code;
+	}
+
+	// Returns the code of "value", adding it if needed
+	public int getOrAddCode(String value) {
+		Integer code = codes.get(value);
+
+		if(null == code) {
+			code = values.size();
+			values.add(value);
+			codes.put(value, code);
+		}
+
+		return code;
+	}
+
+	// Returns the value of "code", or null if invalid
+	public String getValue(int code) {
+		if(code < 0 || code >= values.size()) return null;
+
+		return values.get(code);
+	}
+
+	public int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,342 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Pre-parsed image of a table (see DatabaseMS.openImage()), which
+// is memory mapped and read as is, instead of parsing the text of
+// <data>.txt and <metadata>.txt again on every start.
+//
+// The image is stamped with the size, modification time and CRC32
+// of the files it was made from. It is only used while they match:
+// the checksum is only computed when the size and time can't tell
+// (modification time changed, or within MTIMEWINDOW of the image's
+// own, since a coarse clock may give a later write the same time).
+//
+// The image file format is as follows:
+// | MAGIC (int)
+// | <writtenAt> (long, time the image was started)
+// | for each source file: <size>, <lastModified>, <checksum> (longs,
+// |   size is -1 for a missing file)
+// | <[types]> (BinaryRowCodec header)
+// | <[entries]> (values of each entry, as BinaryRowCodec.writeValues())
+// | <nEntries> (int)
+// | <[offsets]> (long, position of each entry)
+// | <offsetsPosition> (long, always the last 8 bytes)
+
+public class TableImage implements AutoCloseable {
+
+	// Marks the beginning of an image file ("DIMG")
+	public static final int MAGIC = 0x44494D47;
+
+	// Size of the final offsetsPosition
+	private static final int FOOTERSIZE = 8;
+
+	// Coarsest modification time resolution expected (ms, i.e.: FAT)
+	public static final long MTIMEWINDOW = 2000;
+
+	// Size, modification time and checksum of a source file
+	public static class FileStamp {
+		public long size, lastModified, checksum;
+	}
+
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	private int[] types;
+	private int nEntries;
+	private long offsetsPosition;
+
+	private TableImage() {}
+
+	//###################################################//
+	//##################### READING #####################//
+	//###################################################//
+
+	// Maps the image at "imagePath", made from the files "sourcePaths"
+	// Returns null if it is missing, invalid, or out of date
+	public static TableImage open(String imagePath, String[] sourcePaths) throws IOException {
+
+		Path path = Path.of(imagePath);
+		if(!Files.exists(path)) return null;
+
+		TableImage image = new TableImage();
+		image.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			// A single mapping can't go over 2GB
+			long size = image.channel.size();
+			if(size > Integer.MAX_VALUE || size < 4 + FOOTERSIZE) {
+				image.close();
+				return null;
+			}
+
+			image.buffer = image.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			DataInputStream in = new DataInputStream(new BufferInputStream(image.buffer.duplicate()));
+			if(MAGIC != in.readInt()) {
+				image.close();
+				return null;
+			}
+
+			long writtenAt = in.readLong();
+			for(String sourcePath : sourcePaths) {
+				FileStamp stamp = new FileStamp();
+				stamp.size = in.readLong();
+				stamp.lastModified = in.readLong();
+				stamp.checksum = in.readLong();
+
+				if(!isCurrent(stamp, sourcePath, writtenAt)) {
+					image.close();
+					return null;
+				}
+			}
+
+			image.types = BinaryRowCodec.readHeader(in);
+
+			image.offsetsPosition = image.buffer.getLong((int) size - FOOTERSIZE);
+			image.nEntries = image.buffer.getInt((int) image.offsetsPosition);
+
+			if(null == image.types || image.nEntries < 0) {
+				image.close();
+				return null;
+			}
+
+		} catch (IOException | IndexOutOfBoundsException e) {
+			image.close();
+			return null;
+		}
+
+		return image;
+	}
+
+	// Whether the source file at "sourcePath" still matches "stamp",
+	// taken (with its checksum) when a copy of it was started at
+	// "writtenAt". Also used by QueryServer for its in memory copies
+	static boolean isCurrent(FileStamp stamp, String sourcePath, long writtenAt) throws IOException {
+
+		FileStamp current = stampFile(sourcePath, false);
+		if(current.size != stamp.size) return false;
+
+		// Missing before, and still missing
+		if(current.size < 0) return true;
+
+		// Written since, or close enough to the image for a later
+		// write to get the same time: only the content can tell
+		if(current.lastModified != stamp.lastModified || 
+			current.lastModified > writtenAt - MTIMEWINDOW) {
+			return checksumFile(sourcePath) == stamp.checksum;
+		}
+
+		return true;
+	}
+
+	public int[] getTypes() {
+		return types;
+	}
+
+	public int getEntryCount() {
+		return nEntries;
+	}
+
+	// Decodes the entry at real index "index"
+	// Returns null if the index is invalid
+	public AbstractArray getAbstractEntry(int index) {
+
+		if(index < 0 || index >= nEntries) return null;
+
+		try {
+			long position = buffer.getLong((int) offsetsPosition + 4 + index * 8);
+			return BinaryRowCodec.readValues(openStream(position), types);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	// Decodes every entry, in real index order
+	public ArrayList<AbstractArray> getAllAbstractEntries() {
+
+		ArrayList<AbstractArray> entries = new ArrayList<AbstractArray>(nEntries);
+		if(0 == nEntries) return entries;
+
+		try {
+			// Entries are stored one after another
+			DataInputStream in = openStream(buffer.getLong((int) offsetsPosition + 4));
+			for(int e=0; e<nEntries; e++) {
+				entries.add(BinaryRowCodec.readValues(in, types));
+			}
+		} catch (IOException e) {
+			return null;
+		}
+
+		return entries;
+	}
+
+	private DataInputStream openStream(long position) {
+		ByteBuffer view = buffer.duplicate();
+		view.position((int) position);
+		return new DataInputStream(new BufferInputStream(view));
+	}
+
+	// The mapping itself is released once garbage collected
+	@Override
+	public void close() throws IOException {
+		if(null == channel) return;
+
+		channel.close();
+		channel = null;
+	}
+
+	//###################################################//
+	//##################### WRITING #####################//
+	//###################################################//
+
+	// Writes an image entry by entry, then replaces the image at
+	// "imagePath" with it on finish()
+	public static class Writer implements AutoCloseable {
+
+		private String imagePath, tmpImagePath;
+		private DataOutputStream out;
+
+		// Position of each entry
+		private long[] offsets = new long[1024];
+		private int nEntries = 0;
+
+		private int[] types;
+
+		// "stamps" must have been taken before reading the source files
+		public Writer(String imagePath, long writtenAt, FileStamp[] stamps, int[] types) throws IOException {
+
+			this.imagePath = imagePath;
+			this.tmpImagePath = SnapshotRegistry.createTempFile(imagePath);
+			this.types = types;
+
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(Path.of(tmpImagePath))));
+
+			out.writeInt(MAGIC);
+			out.writeLong(writtenAt);
+			for(FileStamp stamp : stamps) {
+				out.writeLong(stamp.size);
+				out.writeLong(stamp.lastModified);
+				out.writeLong(stamp.checksum);
+			}
+			BinaryRowCodec.writeHeader(out, types);
+		}
+
+		// Adds the next entry, which must have the image's types
+		public void add(AbstractArray entry) throws IOException {
+
+			if(nEntries >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			offsets[nEntries++] = out.size();
+
+			for(int e=0; e<types.length; e++) {
+				BinaryRowCodec.writeValue(out, types[e], entry.elements[e]);
+			}
+		}
+
+		// Writes the offsets, then replaces the previous image
+		public void finish() throws IOException {
+
+			long offsetsPosition = out.size();
+
+			out.writeInt(nEntries);
+			for(int e=0; e<nEntries; e++) {
+				out.writeLong(offsets[e]);
+			}
+			out.writeLong(offsetsPosition);
+
+			out.close();
+			out = null;
+
+			SnapshotRegistry.replaceFile(tmpImagePath, imagePath);
+		}
+
+		// Drops the image if finish() wasn't called
+		@Override
+		public void close() throws IOException {
+			if(null == out) return;
+
+			out.close();
+			out = null;
+			Files.deleteIfExists(Path.of(tmpImagePath));
+		}
+	}
+
+	//###################################################//
+	//##################### HELPERS #####################//
+	//###################################################//
+
+	// Returns the stamp of the file at "filePath" (size -1 if missing)
+	// The checksum is only computed if "withChecksum"
+	public static FileStamp stampFile(String filePath, boolean withChecksum) throws IOException {
+
+		FileStamp stamp = new FileStamp();
+		Path path = Path.of(filePath);
+
+		if(!Files.exists(path)) {
+			stamp.size = -1;
+			return stamp;
+		}
+
+		stamp.size = Files.size(path);
+		stamp.lastModified = Files.getLastModifiedTime(path).toMillis();
+		if(withChecksum) stamp.checksum = checksumFile(filePath);
+
+		return stamp;
+	}
+
+	// CRC32 of the whole file
+	private static long checksumFile(String filePath) throws IOException {
+
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[65536];
+
+		try(InputStream in = Files.newInputStream(Path.of(filePath))) {
+			int n;
+			while(0 < (n = in.read(chunk))) {
+				crc.update(chunk, 0, n);
+			}
+		}
+
+		return crc.getValue();
+	}
+
+	// Reads a (mapped) ByteBuffer as a stream
+	private static class BufferInputStream extends InputStream {
+
+		private ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(!buffer.hasRemaining()) return -1;
+
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+	}
+}
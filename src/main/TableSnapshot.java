@@ -0,0 +1,73 @@
+package main;
+
+import java.util.ArrayList;
+
+// Read-only view of a DatabaseMS, as it was when the snapshot
+// was opened (see DatabaseMS.openSnapshot()).
+// Commits made after that are not visible, and don't wait for
+// the snapshot either. Close the snapshot once done, so that
+// its version can be reclaimed.
+public class TableSnapshot implements AutoCloseable {
+
+	// Reads the files of the snapshot version
+	private DatabaseMS<?> reader;
+
+	private SnapshotRegistry registry;
+	private SnapshotRegistry.SnapshotFiles files;
+
+	// Used to find the linked extra files on release
+	private String metaFilePath;
+	private String[] extraFilePaths;
+
+	TableSnapshot(SnapshotRegistry registry, SnapshotRegistry.SnapshotFiles files,
+			String metaFilePath, String[] extraFilePaths) {
+		this.registry = registry;
+		this.files = files;
+		this.metaFilePath = metaFilePath;
+		this.extraFilePaths = extraFilePaths;
+		this.reader = new DatabaseMS<Object>(files.dbFilePath, files.metaFilePath);
+	}
+
+	// Version of the table seen by this snapshot
+	public long getVersion() {
+		return files.version;
+	}
+
+	// Same as DatabaseMS.getAbstractEntry()
+	public AbstractArray getAbstractEntry(int index) {
+		return reader.getAbstractEntry(index);
+	}
+
+	// Same as DatabaseMS.getAllAbstractEntries()
+	public ArrayList<AbstractArray> getAllAbstractEntries() {
+		return reader.getAllAbstractEntries();
+	}
+
+	// Same as DatabaseMS.findAbstractEntries()
+	public ArrayList<Integer> findAbstractEntries(int column, Object value) {
+		return reader.findAbstractEntries(column, value);
+	}
+
+	// Files (links) of the snapshot version
+	SnapshotRegistry.SnapshotFiles getFiles() {
+		return files;
+	}
+
+	public int getLastOperationStatus() {
+		return reader.getLastOperationStatus();
+	}
+
+	public String getLastOperationStatusStr() {
+		return reader.getLastOperationStatusStr();
+	}
+
+	// Releases the snapshot version
+	// The snapshot can't be used after this
+	@Override
+	public void close() {
+		if(null == files) return;
+
+		registry.release(files, metaFilePath, extraFilePaths);
+		files = null;
+	}
+}
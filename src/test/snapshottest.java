@@ -0,0 +1,156 @@
+package test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import main.*;
+
+// Reads a table while another thread keeps committing to it:
+// a snapshot must keep seeing its own version, and reads of the
+// live (compressed, dictionary encoded) table must never fail.
+// Works on its own table, in a temporary directory.
+public class snapshottest {
+
+	// Rows of the initial table, and commits of the writer
+	private static final int NROWS = 300;
+	private static final int NCOMMITS = 200;
+
+	public static void main(String args[]) throws Exception {
+
+		Path dir = Files.createTempDirectory("snapshottest");
+		String dataPath = dir + "/data.txt";
+		String metaPath = dir + "/metadata.txt";
+		String csvPath = dir + "/rows.csv";
+
+		Files.writeString(Path.of(metaPath), "0, 0, 4, \n\nATR_INT, ATR_STR, ATR_DBL, ATR_BOL, \n");
+		Files.writeString(Path.of(dataPath), "");
+
+		StringBuffer csv = new StringBuffer();
+		for(int i=0; i<NROWS; i++) {
+			csv.append(i + ", name" + (i % 7) + ", " + (i * 0.5) + ", " + (0 == i % 2) + "\n");
+		}
+		Files.writeString(Path.of(csvPath), csv.toString());
+
+		DatabaseMS<Object> dbms = new DatabaseMS<Object>(dataPath, metaPath);
+
+		dbms.bulkImport(csvPath, DatabaseMS.BULK_CSV);
+		System.out.println("IMPORT Status = " + dbms.getLastOperationStatusStr());
+
+		// Dictionary encoded names, in small compressed blocks
+		dbms.setDictionaryEncoding(1, true);
+		System.out.println("DICTIONARY Status = " + dbms.getLastOperationStatusStr());
+		dbms.setCompression(DatabaseMetadata.COMPRESSION_DEFLATE, 20);
+		System.out.println("COMPRESSION Status = " + dbms.getLastOperationStatusStr());
+
+		// Small imports, with new names for the dictionary
+		Files.writeString(Path.of(dir + "/small.csv"), "-1, first, 1.5, true\n-2, second, 2.5, false\n");
+
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicInteger readFailures = new AtomicInteger(0);
+		AtomicInteger reads = new AtomicInteger(0);
+
+		// Reads entries of the live table while the commits go on.
+		// The table never has less than NROWS entries
+		Thread liveReader = new Thread(() -> {
+			DatabaseMS<Object> reader = new DatabaseMS<Object>(dataPath, metaPath);
+			Random random = new Random(1);
+
+			while(!done.get()) {
+				AbstractArray entry = reader.getAbstractEntry(random.nextInt(NROWS));
+				reads.incrementAndGet();
+
+				if(null == entry || null == entry.elements[1]) {
+					System.out.println("LIVE READ Status = " + reader.getLastOperationStatusStr());
+					readFailures.incrementAndGet();
+				}
+
+				reader.findAbstractEntries(1, "name3");
+				if(DatabaseMS.OPERATIONSUCCESS != reader.getLastOperationStatus()) {
+					System.out.println("LIVE FIND Status = " + reader.getLastOperationStatusStr());
+					readFailures.incrementAndGet();
+				}
+			}
+		});
+
+		// Removes the first entry and imports two, once per commit pair
+		Thread writer = new Thread(() -> {
+			DatabaseMS<Object> db = new DatabaseMS<Object>(dataPath, metaPath);
+
+			for(int c=0; c<NCOMMITS; c++) {
+				db.removeAbstractEntry(0);
+				db.bulkImport(dir + "/small.csv", DatabaseMS.BULK_CSV);
+
+				if(DatabaseMS.OPERATIONSUCCESS != db.getLastOperationStatus()) {
+					System.out.println("COMMIT Status = " + db.getLastOperationStatusStr());
+				}
+			}
+		});
+
+		int snapshotFailures = 0;
+		try(TableSnapshot snapshot = dbms.openSnapshot()) {
+
+			ArrayList<AbstractArray> expected = snapshot.getAllAbstractEntries();
+			System.out.println("SNAPSHOT Status = " + snapshot.getLastOperationStatusStr()
+					+ ", version " + snapshot.getVersion() + ", " + expected.size() + " entries");
+
+			liveReader.start();
+			writer.start();
+
+			// The snapshot keeps its entries, whatever gets committed
+			while(writer.isAlive()) {
+				ArrayList<AbstractArray> entries = snapshot.getAllAbstractEntries();
+
+				if(!sameEntries(expected, entries)) {
+					System.out.println("SNAPSHOT READ Status = " + snapshot.getLastOperationStatusStr()
+							+ ", " + entries.size() + " entries");
+					snapshotFailures++;
+				}
+
+				AbstractArray first = snapshot.getAbstractEntry(0);
+				if(null == first || !first.elements[0].equals(expected.get(0).elements[0])) {
+					snapshotFailures++;
+				}
+			}
+
+			writer.join();
+		} finally {
+			done.set(true);
+			liveReader.join();
+		}
+
+		System.out.println("FINAL Entries = " + dbms.getAllAbstractEntries().size()
+				+ " (expected " + (NROWS + NCOMMITS) + ")");
+		System.out.println("SNAPSHOT Failures = " + snapshotFailures);
+		System.out.println("LIVE READ Failures = " + readFailures.get() + " of " + reads.get());
+
+		deleteDirectory(dir);
+	}
+
+	// Returns true if both arrays hold the same values, in order
+	private static boolean sameEntries(ArrayList<AbstractArray> a, ArrayList<AbstractArray> b) {
+
+		if(a.size() != b.size()) return false;
+
+		for(int i=0; i<a.size(); i++) {
+			for(int e=0; e<a.get(i).nElements; e++) {
+				Object va = a.get(i).elements[e], vb = b.get(i).elements[e];
+				if(null == va ? null != vb : !va.equals(vb)) return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void deleteDirectory(Path dir) throws IOException {
+		try(Stream<Path> paths = Files.list(dir)) {
+			for(Path path : paths.toList()) Files.delete(path);
+		}
+		Files.delete(dir);
+	}
+}